@@ -1,49 +1,59 @@
 package common;
 
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
-import javax.swing.JPanel;
+
+import common.events.ExportEvent;
 
 /**
  * AbstractGraphTool is an abstract class that contains methods that are ready
  * to use such as {@link #show()}. And there is only one method that needed to
- * be implements {@link #getGraphPanel()} which retunrs a JPanel that contains
- * the content of the graph. This method can only be overrided and called by its
- * children classes.<br>
+ * be implements {@link #getGraphPanel()} which retunrs a RenderPanel that
+ * contains the content of the graph. This method can only be overrided and
+ * called by its children classes.<br>
+ * The graph can also be rendered without a window by
+ * {@link #render(Graphics2D)}, the window is only created when the graph is
+ * shown, so graphs can be rendered on machines without display.<br>
  * AbstractGraphTool also implements the {@link common.Exportable} interface,
  * which contains method {@link #save_img(String, String, String)} that can save
- * the graph as an image.
+ * the graph as an image. A lot of graphs can be saved concurrently by
+ * {@link common.BatchExporter}.
  * 
  * @author Daniel Xu
  *
  */
 public abstract class AbstractGraphTool implements Exportable {
 
-    /** The JFrame that provide window for JPanel **/
+    /** Number of pixels in a strip, see {@link #write_png(OutputStream, int, int)} **/
+    private static final int STRIP_PIXELS = 4 * 1024 * 1024;
+
+    /** The JFrame that provide window for JPanel, created when first shown **/
     protected JFrame frame;
 
     /** Base configuration **/
     protected BaseConfig config;
 
-    /** Exported image **/
-    protected BufferedImage img;
-
     /**
-     * Construct the GraphTool with base configuration. This constructor will setup
-     * a window that is ready for JPanel to be added, set default close operation to
-     * <code>JFrame.DISPOSE_ON_CLOSE</code> and set the window not resizable
+     * Construct the GraphTool with base configuration. The window is not created
+     * until the graph is shown, see {@link #show()}
      * 
      * @param config Base configuration or any configuration that overrides Base
      *               configuration
      */
     public AbstractGraphTool(BaseConfig config) {
 	this.config = config;
-	frame = new JFrame(config.TITLE);
-	frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-	frame.setResizable(false);
     }
 
     /**
@@ -61,21 +71,29 @@ public abstract class AbstractGraphTool implements Exportable {
      * </pre>
      * 
      * Where <code>ExplicitlyDefinedPanel</code> means any class that extends
-     * JPanel, and <code>var1, var2,...</code> means the elements that users added
+     * RenderPanel, and <code>var1, var2,...</code> means the elements that users added
      * on the graph. The benifit is that, users may add elements on the graph
      * multiple times, however, we only want one instance of JPanel that contains
      * all the elements provided by users. In this case, we only return the JPanel
-     * once users finished adding elements.
+     * once users finished adding elements. Graphs may be rendered by several
+     * threads at once, so the method should be synchronized.
      * 
-     * @return JPanel The JPanel or children class
+     * @return RenderPanel The RenderPanel or children class
      */
-    protected abstract JPanel getGraphPanel();
+    protected abstract RenderPanel getGraphPanel();
 
     /**
      * Show up the graph on screen, the window that includes the graph is invisible
-     * by default.
+     * by default. The window is setup when the graph is shown for the first time,
+     * the default close operation is <code>JFrame.DISPOSE_ON_CLOSE</code> and the
+     * window is not resizable.
      */
     public void show() {
+	if (frame == null) {
+	    frame = new JFrame(config.TITLE);
+	    frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+	    frame.setResizable(false);
+	}
 	frame.add(getGraphPanel());
 	frame.pack();
 	if (config.graph_location_x == -1 && config.graph_location_y == -1)
@@ -85,18 +103,218 @@ public abstract class AbstractGraphTool implements Exportable {
 	frame.setVisible(true);
     }
 
+    /**
+     * Get the statistics of rendering the graph on screen, see
+     * {@link common.RenderPanel#stats()}
+     * 
+     * @return The statistics
+     */
+    public FrameStats stats() {
+	return getGraphPanel().stats();
+    }
+
+    /**
+     * Render the graph on the given Graphics2D directly, without a window or
+     * Swing painting, so it also works in headless mode. The graph covers the area
+     * from (0,0) to the width and height in the configuration.
+     * 
+     * @param g Graphics2D
+     */
+    public void render(Graphics2D g) {
+	getGraphPanel().render(g);
+    }
+
+    /**
+     * Render the graph on the given image, see {@link #render(Graphics2D)}
+     * 
+     * @param image The image, usually has the width and height in the
+     *              configuration
+     * @return The image
+     */
+    public BufferedImage render(BufferedImage image) {
+	Graphics2D g = Rasterizer.createGraphics(image);
+	try {
+	    render(g);
+	} finally {
+	    g.dispose();
+	}
+	return image;
+    }
+
+    /**
+     * Render the graph on the given image in parallel, the image is split into
+     * tiles and they are rendered by the executor at the same time. It is faster
+     * than {@link #render(BufferedImage)} for large images, especially when high
+     * quality is enabled.
+     * 
+     * @param image    The image, usually has the width and height in the
+     *                 configuration
+     * @param tile     Size of the tiles in pixels, such as 256
+     * @param executor The executor that renders the tiles
+     * @return The image
+     */
+    public BufferedImage render(BufferedImage image, int tile, Executor executor) {
+	getGraphPanel().render(image, tile, executor);
+	return image;
+    }
+
+    /**
+     * Render the graph on the given image in parallel by the common pool, see
+     * {@link #render(BufferedImage, int, Executor)}. Tiles are rendered by the
+     * calling thread if there is only one processor.
+     * 
+     * @param image The image, usually has the width and height in the
+     *              configuration
+     * @param tile  Size of the tiles in pixels, such as 256
+     * @return The image
+     */
+    public BufferedImage render(BufferedImage image, int tile) {
+	if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+	    return render(image, tile, ForkJoinPool.commonPool());
+	}
+	return render(image, tile, Runnable::run);
+    }
+
+    /**
+     * Render the graph on a new image with the width and height in the
+     * configuration, see {@link #render(Graphics2D)}
+     * 
+     * @return The image
+     */
+    public BufferedImage render() {
+	return render(new BufferedImage(config.width, config.height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Export the graph as a png image of the given size and save it to the
+     * designated location, see {@link #write_png(OutputStream, int, int)}
+     * 
+     * @param name   The name of the file that will be saved, without .png
+     * @param dir    The directory that the file will be located at
+     * @param width  Width of the image
+     * @param height Height of the image
+     */
+    public void save_img(String name, String dir, int width, int height) {
+	try (OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(dir, name + ".png")))) {
+	    write_png(out, width, height);
+	} catch (Exception e) {
+	    e.printStackTrace();
+	}
+    }
+
+    /**
+     * Write the graph as a png image of the given size, which can be far larger
+     * than the graph, such as posters. The graph is scaled to the size and
+     * rendered in horizontal strips, and each strip is encoded as soon as it is
+     * rendered, so only a few strips are in memory no matter how large the image
+     * is. The size should have the same aspect ratio as the graph, otherwise texts
+     * are stretched as well.
+     * 
+     * @param out    The stream that the png is written to, it is not closed
+     * @param width  Width of the image
+     * @param height Height of the image
+     * @throws IOException If the png cannot be written
+     */
+    public void write_png(OutputStream out, int width, int height) throws IOException {
+	RenderPanel panel = getGraphPanel();
+	double sx = width / (double) config.width;
+	double sy = height / (double) config.height;
+	int rows = Math.max(1, Math.min(height, STRIP_PIXELS / width));
+	BufferedImage strip = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+	List<Renderable> objects = panel.begin_render();
+	try (PngEncoder encoder = new PngEncoder(out, width, height, config.png_level)) {
+	    for (int y = 0; y < height; y += rows) {
+		int h = Math.min(rows, height - y);
+		ExportEvent render = new ExportEvent(ExportEvent.RENDER, "png", width, h);
+		render.begin();
+		Graphics2D g = Rasterizer.createGraphics(strip);
+		try {
+		    // The strip shows its rows of the scaled graph
+		    g.translate(0, -y);
+		    g.clip(new Rectangle(0, y, width, h));
+		    g.scale(sx, sy);
+		    panel.render_layers(g, objects);
+		} finally {
+		    g.dispose();
+		}
+		render.commit();
+		ExportEvent encode = new ExportEvent(ExportEvent.ENCODE, "png", width, h);
+		encode.begin();
+		encoder.write(h == rows ? strip : strip.getSubimage(0, 0, width, h));
+		encode.commit();
+	    }
+	}
+    }
+
+    /**
+     * Write the graph as a svg image, see {@link common.SvgGraphics}. The graph is
+     * not rasterized, shapes and texts are written as they are rendered, so the
+     * image stays sharp at any size and is usually much smaller than large png
+     * images.
+     * 
+     * @param out The stream that the svg is written to, it is not closed
+     * @throws IOException If the svg cannot be written
+     */
+    public void write_svg(OutputStream out) throws IOException {
+	ExportEvent event = new ExportEvent(ExportEvent.ENCODE, "svg", config.width, config.height);
+	event.begin();
+	RenderPanel panel = getGraphPanel();
+	List<Renderable> objects = panel.begin_render();
+	SvgGraphics g = new SvgGraphics(out, config.width, config.height, config.svg_tolerance);
+	panel.render_layers(g, objects);
+	g.finish();
+	event.commit();
+    }
+
+    /**
+     * Png images are encoded by {@link common.PngEncoder} in parallel, with the
+     * compression level in the configuration. Svg images are written by
+     * {@link #write_svg(OutputStream)}.
+     */
     @Override
     public void save_img(String name, String dir, String type) {
-	if (img == null) {
-	    img = new BufferedImage(config.width, config.height, BufferedImage.TYPE_INT_RGB);
-	    getGraphPanel().paint(img.createGraphics());
-	}
 	try {
-	    File f = new File(dir + "\\" + name + "." + type);
-	    f.createNewFile();
-	    ImageIO.write(img, type, f);
+	    File f = new File(dir, name + "." + type);
+	    if (type.equalsIgnoreCase("svg")) {
+		write_svg(f);
+	    } else {
+		ExportEvent event = new ExportEvent(ExportEvent.RENDER, type, config.width, config.height);
+		event.begin();
+		BufferedImage img = render();
+		event.commit();
+		write_img(img, type, f, config.png_level, null);
+	    }
 	} catch (Exception e) {
 	    e.printStackTrace();
 	}
     }
+
+    // Write the graph as a svg image to the file
+    void write_svg(File f) throws IOException {
+	try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f))) {
+	    write_svg(out);
+	}
+    }
+
+    // Write the image to the file, png images are encoded by PngEncoder with the
+    // executor, or the default one if it is null
+    static void write_img(BufferedImage img, String type, File f, int level, Executor executor)
+	    throws IOException {
+	ExportEvent event = new ExportEvent(ExportEvent.ENCODE, type, img.getWidth(), img.getHeight());
+	event.begin();
+	if (type.equalsIgnoreCase("png")) {
+	    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+		    PngEncoder encoder = executor == null
+			    ? new PngEncoder(out, img.getWidth(), img.getHeight(), level)
+			    : new PngEncoder(out, img.getWidth(), img.getHeight(), level, executor)) {
+		encoder.write(img);
+	    }
+	} else if (!ImageIO.write(img, type, f)) {
+	    throw new IOException("No writer for image type " + type);
+	}
+	if (event.shouldCommit()) {
+	    event.bytes = f.length();
+	    event.commit();
+	}
+    }
 }
@@ -1,6 +1,16 @@
 package common;
 
 import java.awt.Color;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.text.Format;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.SwingUtilities;
 
 /**
  * The base configuration that all configurations shared. It contains six
@@ -12,12 +22,28 @@ import java.awt.Color;
  * Only children configuration class can override them, however, the overrided
  * values just represent the default values, user can still modify them by
  * changing public variables directly. It is more convenience and not
- * necessarily to call too many getters and setters.
+ * necessarily to call too many getters and setters.<br>
+ * 
+ * Since variables are changed directly, {@link #commit()} has to be called
+ * once they are changed while the graph is shown, changes are found by
+ * comparing the variables with the values committed last time. Variables that
+ * are set before the graph is created need no commit. Variables are grouped so
+ * that caches only depend on the groups they use, for example, the range of
+ * the axis is in {@link #VIEWPORT} and colors are in {@link #STYLE}.
  * 
  * @author Daniel Xu
  *
  */
-public class BaseConfig {
+public class BaseConfig implements Cloneable {
+
+    /** Group of variables that decide the size and range of the graph **/
+    public static final int VIEWPORT = 0;
+
+    /** Group of variables that decide the colors, fonts and labels **/
+    public static final int STYLE = 1;
+
+    /** Group of variables that decide how the data is sampled and shown **/
+    public static final int DATA = 2;
 
     /** TITLE of the window, cannot be modified **/
     public final String TITLE = "JPlot v0.2";
@@ -39,4 +65,231 @@ public class BaseConfig {
 
     /** True to enable high quality, false to disable **/
     public boolean high_quality = true;
+
+    /**
+     * True to show a draft without high quality and with less details as soon as
+     * the graph is changed on screen, and replace it once the graph is rendered in
+     * full quality in background, see {@link common.RenderPanel}
+     **/
+    public boolean progressive = true;
+
+    /**
+     * Max number of frames per second that the graph is painted on screen, see
+     * {@link common.RenderScheduler}. Optional objects are skipped after frames
+     * that take longer than a frame
+     **/
+    public int frame_rate = 60;
+
+    /**
+     * True to show the frames per second and the slowest renderable objects on
+     * top of the graph, see {@link common.FrameStats}
+     **/
+    public boolean show_stats = false;
+
+    /**
+     * Compression level of the exported png images from 0 to 9, lower is faster
+     * but larger, see {@link common.PngEncoder}
+     **/
+    public int png_level = 6;
+
+    /**
+     * Max distance in pixels that points of lines can be moved in the exported
+     * svg images, larger is smaller but less accurate, see
+     * {@link common.SvgGraphics}
+     **/
+    public double svg_tolerance = 0.25;
+
+    /**
+     * Points and lines are drawn on images directly rather than by Java2D if
+     * there are more of them than this, or high quality is disabled, see
+     * {@link common.Rasterizer}
+     **/
+    public int raster_shapes = 100000;
+
+    /** Public variables that are tracked, initialized when first committed **/
+    private Field[] fields;
+
+    /** Groups of the tracked variables **/
+    private int[] groups;
+
+    /** Values of the tracked variables when they were committed last time **/
+    private Object[] values;
+
+    /** Versions of the groups **/
+    private long[] versions = new long[3];
+
+    /** Listeners that are notified when variables are changed **/
+    private List<ConfigListener> listeners = new CopyOnWriteArrayList<ConfigListener>();
+
+    /** True if this is a snapshot, which cannot be committed **/
+    private boolean frozen;
+
+    /**
+     * Get the version of the configuration, it increases every time any variable
+     * is found changed by {@link #commit()}. It does not look for changes, so it
+     * can be called on any thread.
+     * 
+     * @return Version of the configuration
+     */
+    public synchronized long version() {
+	return versions[VIEWPORT] + versions[STYLE] + versions[DATA];
+    }
+
+    /**
+     * Get the version of a group of variables, it increases every time any
+     * variable in the group is found changed by {@link #commit()}.
+     * 
+     * @param group The group, {@link #VIEWPORT}, {@link #STYLE} or {@link #DATA}
+     * @return Version of the group
+     */
+    public synchronized long version(int group) {
+	return versions[group];
+    }
+
+    /**
+     * Commit the changes of the variables, they are compared with the values
+     * committed last time and the versions of the changed groups are increased,
+     * so the graph is rendered again. It can be called on any thread, but the
+     * variables should not be changed by several threads at once. The listeners
+     * are notified after the configuration is unlocked, on the event dispatch
+     * thread since they update the state of the objects that render the graph,
+     * right away if it is called on the event dispatch thread, and later
+     * otherwise.
+     * 
+     * @return Version of the configuration after the commit
+     */
+    public long commit() {
+	boolean[] changed = new boolean[versions.length];
+	synchronized (this) {
+	    if (frozen) {
+		throw new IllegalStateException("Snapshots of the configuration cannot be committed");
+	    }
+	    try {
+		if (fields == null) {
+		    track();
+		    return version();
+		}
+		for (int i = 0; i < fields.length; i++) {
+		    Object v = fields[i].get(this);
+		    if (!Objects.deepEquals(v, values[i])) {
+			values[i] = copy_of(v);
+			changed[groups[i]] = true;
+		    }
+		}
+	    } catch (IllegalAccessException e) {
+		e.printStackTrace();
+	    }
+	    for (int g = 0; g < changed.length; g++) {
+		if (changed[g]) {
+		    versions[g]++;
+		}
+	    }
+	}
+	Runnable notify = () -> {
+	    for (int g = 0; g < changed.length; g++) {
+		if (changed[g]) {
+		    for (ConfigListener l : listeners) {
+			l.changed(this, g);
+		    }
+		}
+	    }
+	};
+	if (SwingUtilities.isEventDispatchThread()) {
+	    notify.run();
+	} else {
+	    SwingUtilities.invokeLater(notify);
+	}
+	return version();
+    }
+
+    /**
+     * Add a listener that will be notified when variables are found changed
+     * 
+     * @param l The listener
+     */
+    public void addListener(ConfigListener l) {
+	listeners.add(l);
+    }
+
+    /**
+     * Get a copy of the configuration that will not be affected by later
+     * modifications, so it can be used by other threads while the configuration
+     * is being changed. The copy has the values of the last {@link #commit()},
+     * so it matches the versions and what the listeners were notified of, even
+     * if variables are changed after the commit. Every call returns a new copy
+     * that belongs to the caller, arrays and formats are copied as well, so
+     * changing it affects nothing else. The copy has the same versions, no
+     * listeners, and it cannot be committed.
+     * 
+     * @return The copy of the configuration
+     */
+    public synchronized BaseConfig snapshot() {
+	try {
+	    if (fields == null) {
+		track();
+	    }
+	    BaseConfig copy = (BaseConfig) clone();
+	    for (int i = 0; i < fields.length; i++) {
+		fields[i].set(copy, copy_of(values[i]));
+	    }
+	    copy.fields = null;
+	    copy.versions = versions.clone();
+	    copy.listeners = new CopyOnWriteArrayList<ConfigListener>();
+	    copy.frozen = true;
+	    return copy;
+	} catch (CloneNotSupportedException | IllegalAccessException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Get the group of a variable. Variables are in {@link #STYLE} unless they are
+     * listed by the configuration, children configuration classes override this
+     * method to list their own variables.
+     * 
+     * @param name Name of the variable
+     * @return The group of the variable
+     */
+    protected int group(String name) {
+	switch (name) {
+	case "graph_location_x":
+	case "graph_location_y":
+	case "width":
+	case "height":
+	    return VIEWPORT;
+	default:
+	    return STYLE;
+	}
+    }
+
+    // Find the public variables and remember their values, changes are found
+    // against these values from now on
+    private void track() throws IllegalAccessException {
+	List<Field> l = new ArrayList<Field>();
+	for (Field f : getClass().getFields()) {
+	    if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers())) {
+		l.add(f);
+	    }
+	}
+	fields = l.toArray(new Field[l.size()]);
+	groups = new int[fields.length];
+	values = new Object[fields.length];
+	for (int i = 0; i < fields.length; i++) {
+	    groups[i] = group(fields[i].getName());
+	    values[i] = copy_of(fields[i].get(this));
+	}
+    }
+
+    // Copy the value if it can be modified without assigning the variable
+    private static Object copy_of(Object v) {
+	if (v != null && v.getClass().isArray()) {
+	    int length = Array.getLength(v);
+	    Object copy = Array.newInstance(v.getClass().getComponentType(), length);
+	    System.arraycopy(v, 0, copy, 0, length);
+	    return copy;
+	} else if (v instanceof Format) {
+	    return ((Format) v).clone();
+	}
+	return v;
+    }
 }
@@ -0,0 +1,139 @@
+package common;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import common.events.ExportEvent;
+import util.ExceptionHandler;
+
+/**
+ * BatchExporter exports a lot of graphs as images concurrently. Graphs are
+ * rendered without windows and encoded by a fixed number of threads, and the
+ * images are reused through {@link common.ImagePool}, so exporting thousands of
+ * graphs does not allocate thousands of images. Every export returns a
+ * CompletableFuture that completes with the saved file, or exceptionally if the
+ * graph cannot be saved. Exports do not use the event dispatch thread, so they
+ * run in parallel, and they can be joined on it, although that blocks the
+ * window until they are saved.
+ * 
+ * <pre>
+ * {@code
+ * try (BatchExporter exporter = new BatchExporter()) {
+ *     exporter.export(grapher, "graph", "out", "png").join();
+ * }
+ * }
+ * </pre>
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class BatchExporter implements AutoCloseable {
+
+    /** Threads that render and encode the graphs **/
+    private ExecutorService executor;
+
+    /** Images that are reused **/
+    private ImagePool pool;
+
+    /**
+     * Construct the exporter with one thread for each processor
+     */
+    public BatchExporter() {
+	this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Construct the exporter with the given number of threads
+     * 
+     * @param threads Number of threads that render and encode the graphs
+     */
+    public BatchExporter(int threads) {
+	if (threads <= 0) {
+	    throw new IllegalArgumentException("Number of threads must be positive");
+	}
+	executor = Executors.newFixedThreadPool(threads, r -> {
+	    Thread t = new Thread(r, "BatchExporter");
+	    t.setDaemon(true);
+	    return t;
+	});
+	pool = new ImagePool(threads);
+    }
+
+    /**
+     * Export the graph as an image, see
+     * {@link common.Exportable#save_img(String, String, String)}. The graph should
+     * not be changed until it is exported.
+     * 
+     * @param tool The graph
+     * @param name The name of the file that will be saved
+     * @param dir  The directory that the file will be located at
+     * @param type The image type, usually png, jpg or svg
+     * @return The future of the saved file
+     */
+    public CompletableFuture<File> export(AbstractGraphTool tool, String name, String dir, String type) {
+	if (ExceptionHandler.isnull(tool)) {
+	    throw new NullPointerException("Graph cannot be null");
+	}
+	File f = new File(dir, name + "." + type);
+	return CompletableFuture.supplyAsync(() -> {
+	    if (type.equalsIgnoreCase("svg")) {
+		// Vector images are not rendered on images
+		try {
+		    tool.write_svg(f);
+		    return f;
+		} catch (IOException e) {
+		    throw new UncheckedIOException(e);
+		}
+	    }
+	    BufferedImage img = pool.acquire(tool.config.width, tool.config.height, BufferedImage.TYPE_INT_RGB);
+	    try {
+		ExportEvent event = new ExportEvent(ExportEvent.RENDER, type, img.getWidth(), img.getHeight());
+		event.begin();
+		tool.render(img);
+		event.commit();
+		// Graphs are already exported in parallel, each one is encoded by one thread
+		AbstractGraphTool.write_img(img, type, f, tool.config.png_level, Runnable::run);
+		return f;
+	    } catch (IOException e) {
+		throw new UncheckedIOException(e);
+	    } finally {
+		pool.release(img);
+	    }
+	}, executor);
+    }
+
+    /**
+     * Export all graphs as images, see
+     * {@link #export(AbstractGraphTool, String, String, String)}
+     * 
+     * @param tools The graphs by the names of their files
+     * @param dir   The directory that the files will be located at
+     * @param type  The image type, usually png or jpg
+     * @return The futures of the saved files, in the order of the graphs
+     */
+    public List<CompletableFuture<File>> export(Map<String, ? extends AbstractGraphTool> tools, String dir,
+	    String type) {
+	List<CompletableFuture<File>> files = new ArrayList<CompletableFuture<File>>();
+	for (Map.Entry<String, ? extends AbstractGraphTool> e : tools.entrySet()) {
+	    files.add(export(e.getValue(), e.getKey(), dir, type));
+	}
+	return files;
+    }
+
+    /**
+     * Stop accepting graphs, graphs that were already given are still exported
+     */
+    @Override
+    public void close() {
+	executor.shutdown();
+    }
+
+}
@@ -0,0 +1,125 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * BatchSubscriber receives items from a <code>Flow.Publisher</code> and hands
+ * them to the graph in batches. Items that arrive between two frames are
+ * collected, and they are published to the graph at once by
+ * {@link #publish(List)} on the event dispatch thread, so the graph is updated
+ * at most once per frame no matter how fast the items arrive. Frames are run by
+ * {@link common.RenderScheduler}.<br>
+ * The subscriber only requests a limited number of items, and more items are
+ * requested after the received items are published. Therefore, if the graph
+ * falls behind, the publisher will be slowed down instead of queueing items
+ * without limit. <code>java.util.concurrent.SubmissionPublisher</code> can be
+ * used as a publisher in the same process.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public abstract class BatchSubscriber<T> implements Flow.Subscriber<T> {
+
+    /** Default max number of items that are requested but not published **/
+    public static final int DEFAULT_BATCH = 1024;
+
+    /** Max number of items that are requested but not published **/
+    private final int batch;
+
+    /** Items that are received but not published **/
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<T>();
+
+    private volatile Flow.Subscription subscription;
+
+    /** Task that publishes items every frame **/
+    private final Runnable drainer = this::drain;
+
+    /**
+     * Construct the subscriber with the default batch size
+     */
+    public BatchSubscriber() {
+	this(DEFAULT_BATCH);
+    }
+
+    /**
+     * Construct the subscriber with a custom batch size
+     * 
+     * @param batch Max number of items that are requested but not published yet,
+     *              minimum value should be 1
+     */
+    public BatchSubscriber(int batch) {
+	if (batch < 1) {
+	    throw new IllegalArgumentException("Batch size must be greater than 0");
+	}
+	this.batch = batch;
+    }
+
+    /**
+     * Publish a batch of items to the graph, it is always called on the event
+     * dispatch thread.
+     * 
+     * @param items Items received since last frame, never empty
+     */
+    protected abstract void publish(List<T> items);
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+	this.subscription = subscription;
+	RenderScheduler.add(drainer);
+	subscription.request(batch);
+    }
+
+    @Override
+    public void onNext(T item) {
+	pending.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+	throwable.printStackTrace();
+	SwingUtilities.invokeLater(this::stop);
+    }
+
+    @Override
+    public void onComplete() {
+	SwingUtilities.invokeLater(this::stop);
+    }
+
+    /**
+     * Stop receiving items, items that are received but not published will be
+     * dropped
+     */
+    public void cancel() {
+	if (subscription != null) {
+	    subscription.cancel();
+	}
+	SwingUtilities.invokeLater(() -> {
+	    RenderScheduler.remove(drainer);
+	    pending.clear();
+	});
+    }
+
+    // Publish the remaining items and stop publishing every frame
+    private void stop() {
+	drain();
+	RenderScheduler.remove(drainer);
+    }
+
+    // Publish received items and request the same number of items
+    private void drain() {
+	List<T> items = new ArrayList<T>();
+	T item;
+	while ((item = pending.poll()) != null) {
+	    items.add(item);
+	}
+	if (!items.isEmpty()) {
+	    publish(items);
+	    subscription.request(items.size());
+	}
+    }
+}
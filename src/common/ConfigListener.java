@@ -0,0 +1,22 @@
+package common;
+
+/**
+ * ConfigListener is notified when the variables of a configuration are changed.
+ * Since the variables are modified directly, changes are found when they are
+ * committed, and listeners are notified on the event dispatch thread, see
+ * {@link common.BaseConfig#commit()}
+ * 
+ * @author Daniel Xu
+ *
+ */
+public interface ConfigListener {
+
+    /**
+     * Called once for every group of variables that were changed
+     * 
+     * @param config The configuration
+     * @param group  The group, such as {@link common.BaseConfig#VIEWPORT}
+     */
+    public void changed(BaseConfig config, int group);
+
+}
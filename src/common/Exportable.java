@@ -17,7 +17,7 @@ public interface Exportable {
      * @param name The name of the file that will be saved
      * @param dir  The directory that the file will be located at. This must be a
      *             folder but not a specific file.
-     * @param type The image type, usually png or jpg
+     * @param type The image type, usually png, jpg or svg
      */
     public void save_img(String name, String dir, String type);
 
@@ -0,0 +1,234 @@
+package common;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FrameStats measures how long each renderable object of a
+ * {@link common.RenderPanel} takes to render and how many bytes it allocates,
+ * so the objects that use up the frames can be found. The last
+ * {@link #WINDOW} measurements of each object are kept, and their percentiles
+ * are computed when they are asked for. Frames that are painted on screen are
+ * counted as well, see {@link #fps()}.<br>
+ * Objects are measured when they are rendered on screen, either on the event
+ * dispatch thread or in background, but not on drafts, see
+ * {@link common.RenderPanel#stats()}.
+ *
+ * @author Daniel Xu
+ *
+ */
+public class FrameStats {
+
+    /** Number of measurements that are kept for each object and the frames **/
+    public static final int WINDOW = 256;
+
+    /** Measures the allocated bytes of threads, null if it is not supported **/
+    private static final com.sun.management.ThreadMXBean threads = allocation_bean();
+
+    /** Measurements of the objects in the order they were first measured **/
+    private final Map<Renderable, Samples> layers = new LinkedHashMap<Renderable, Samples>();
+
+    /** Nanoseconds when the last frames started **/
+    private final long[] frames = new long[WINDOW];
+
+    /** Number of frames that are counted **/
+    private long frame_count;
+
+    /**
+     * Statistics of the measurements of a renderable object, times are in
+     * milliseconds
+     */
+    public static class Layer {
+
+	/** Name of the class of the object **/
+	public final String name;
+
+	/** Number of measurements that the statistics are computed from **/
+	public final int count;
+
+	/** Median time **/
+	public final double p50;
+
+	/** 95th percentile of the time **/
+	public final double p95;
+
+	/** 99th percentile of the time **/
+	public final double p99;
+
+	/** Max time **/
+	public final double max;
+
+	/** Average allocated bytes, -1 if it cannot be measured **/
+	public final long allocated;
+
+	private Layer(String name, int count, double p50, double p95, double p99, double max, long allocated) {
+	    this.name = name;
+	    this.count = count;
+	    this.p50 = p50;
+	    this.p95 = p95;
+	    this.p99 = p99;
+	    this.max = max;
+	    this.allocated = allocated;
+	}
+
+	@Override
+	public String toString() {
+	    return String.format("%s p50 %.2fms p95 %.2fms p99 %.2fms max %.2fms", name, p50, p95, p99, max);
+	}
+    }
+
+    /**
+     * Get the bytes that the current thread has allocated, it is used to measure
+     * the allocation of an object by the difference before and after it renders
+     *
+     * @return Allocated bytes, -1 if it cannot be measured
+     */
+    public static long allocated() {
+	return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Record a measurement of a renderable object
+     *
+     * @param r         The object
+     * @param nanos     Nanoseconds that it took to render
+     * @param allocated Bytes that were allocated, negative if unknown
+     */
+    public synchronized void record(Renderable r, long nanos, long allocated) {
+	Samples s = layers.get(r);
+	if (s == null) {
+	    s = new Samples();
+	    layers.put(r, s);
+	}
+	int i = (int) (s.count++ % WINDOW);
+	s.nanos[i] = nanos;
+	s.bytes[i] = allocated;
+    }
+
+    /**
+     * Count a frame that is painted on screen
+     *
+     * @param start Nanoseconds when the frame started, see
+     *              <code>System.nanoTime()</code>
+     */
+    public synchronized void frame(long start) {
+	frames[(int) (frame_count++ % WINDOW)] = start;
+    }
+
+    /**
+     * Get the number of frames per second over the last frames, frames are only
+     * painted when something changes, so it is 0 when the graph is idle
+     *
+     * @return Frames per second
+     */
+    public synchronized double fps() {
+	int n = (int) Math.min(frame_count, WINDOW);
+	if (n < 2) {
+	    return 0;
+	}
+	long last = frames[(int) ((frame_count - 1) % WINDOW)];
+	long first = frames[(int) ((frame_count - n) % WINDOW)];
+	// Frames that were painted more than a second ago do not count
+	long now = System.nanoTime();
+	while (n > 1 && now - first > 1000000000L) {
+	    n--;
+	    first = frames[(int) ((frame_count - n) % WINDOW)];
+	}
+	return n < 2 || last == first ? 0 : (n - 1) * 1e9 / (last - first);
+    }
+
+    /**
+     * Get the statistics of all measured objects, in the order they were first
+     * measured
+     *
+     * @return The statistics
+     */
+    public synchronized List<Layer> layers() {
+	List<Layer> l = new ArrayList<Layer>();
+	for (Map.Entry<Renderable, Samples> e : layers.entrySet()) {
+	    l.add(e.getValue().stats(name(e.getKey())));
+	}
+	return l;
+    }
+
+    /**
+     * Get the statistics of a renderable object
+     *
+     * @param r The object
+     * @return The statistics, null if it was never measured
+     */
+    public synchronized Layer layer(Renderable r) {
+	Samples s = layers.get(r);
+	return s == null ? null : s.stats(name(r));
+    }
+
+    /**
+     * Forget all measurements
+     */
+    public synchronized void clear() {
+	layers.clear();
+	frame_count = 0;
+    }
+
+    // Name of the class of the object, anonymous classes are named by the class
+    // that they are declared in
+    static String name(Renderable r) {
+	Class<?> c = r.getClass();
+	while (c.getSimpleName().isEmpty() && c.getEnclosingClass() != null) {
+	    c = c.getEnclosingClass();
+	}
+	return c.getSimpleName();
+    }
+
+    // The bean that measures allocated bytes if the JVM supports it
+    private static com.sun.management.ThreadMXBean allocation_bean() {
+	try {
+	    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	    if (bean instanceof com.sun.management.ThreadMXBean) {
+		com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+		if (b.isThreadAllocatedMemorySupported()) {
+		    b.setThreadAllocatedMemoryEnabled(true);
+		    return b;
+		}
+	    }
+	} catch (LinkageError | UnsupportedOperationException e) {
+	    // Allocation is not measured on other JVMs
+	}
+	return null;
+    }
+
+    // The last measurements of an object
+    private static class Samples {
+	private long[] nanos = new long[WINDOW];
+	private long[] bytes = new long[WINDOW];
+	private long count;
+
+	private Layer stats(String name) {
+	    int n = (int) Math.min(count, WINDOW);
+	    long[] sorted = Arrays.copyOf(nanos, n);
+	    Arrays.sort(sorted);
+	    long total = 0;
+	    boolean known = true;
+	    for (int i = 0; i < n; i++) {
+		known &= bytes[i] >= 0;
+		total += bytes[i];
+	    }
+	    return new Layer(name, n, percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 0.99),
+		    percentile(sorted, 1), known && n > 0 ? total / n : -1);
+	}
+
+	// The nearest-rank percentile in milliseconds
+	private static double percentile(long[] sorted, double p) {
+	    if (sorted.length == 0) {
+		return 0;
+	    }
+	    int i = (int) Math.ceil(p * sorted.length) - 1;
+	    return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+	}
+    }
+}
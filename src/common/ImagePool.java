@@ -0,0 +1,109 @@
+package common;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ImagePool keeps images that are no longer used, so images of the same size
+ * and type can be reused instead of allocated again. It is used when a lot of
+ * graphs are exported, see {@link common.BatchExporter}. Reused images are not
+ * cleared, which is fine for graphs since they always fill the background.<br>
+ * Only the sizes and types that were used most recently are kept, images of
+ * other sizes are dropped, so exporting graphs of many sizes does not keep an
+ * image of every size forever.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class ImagePool {
+
+    /** Default number of sizes and types whose images are kept **/
+    public static final int DEFAULT_SIZES = 4;
+
+    /** Max number of idle images that are kept for each size and type **/
+    private int capacity;
+
+    /** Max number of sizes and types whose images are kept **/
+    private int sizes;
+
+    /** Idle images by their size and type, the least recently used first **/
+    private Map<String, Deque<BufferedImage>> idle;
+
+    /**
+     * Construct the pool that keeps the images of {@link #DEFAULT_SIZES} sizes
+     * 
+     * @param capacity Max number of idle images that are kept for each size and
+     *                 type, usually the number of threads that use the pool
+     */
+    public ImagePool(int capacity) {
+	this(capacity, DEFAULT_SIZES);
+    }
+
+    /**
+     * Construct the pool
+     * 
+     * @param capacity Max number of idle images that are kept for each size and
+     *                 type, usually the number of threads that use the pool
+     * @param sizes    Max number of sizes and types whose images are kept, the
+     *                 least recently used ones are dropped
+     */
+    public ImagePool(int capacity, int sizes) {
+	if (capacity < 0 || sizes < 0) {
+	    throw new IllegalArgumentException("Capacity and sizes cannot be negative");
+	}
+	this.capacity = capacity;
+	this.sizes = sizes;
+	idle = new LinkedHashMap<String, Deque<BufferedImage>>(16, 0.75f, true) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Deque<BufferedImage>> eldest) {
+		return size() > ImagePool.this.sizes;
+	    }
+	};
+    }
+
+    /**
+     * Get an idle image with the given size and type, or a new one if there is no
+     * such image
+     * 
+     * @param width  Width of the image
+     * @param height Height of the image
+     * @param type   Type of the image, such as <code>BufferedImage.TYPE_INT_RGB</code>
+     * @return The image
+     */
+    public synchronized BufferedImage acquire(int width, int height, int type) {
+	Deque<BufferedImage> images = idle.get(key(width, height, type));
+	if (images != null && !images.isEmpty()) {
+	    return images.pop();
+	}
+	return new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Give back an image that is no longer used, it will be dropped if the pool
+     * already keeps enough images of its size and type, and the images of the
+     * least recently used size are dropped if there are too many sizes
+     * 
+     * @param image The image
+     */
+    public synchronized void release(BufferedImage image) {
+	String key = key(image.getWidth(), image.getHeight(), image.getType());
+	Deque<BufferedImage> images = idle.get(key);
+	if (images == null) {
+	    images = new ArrayDeque<BufferedImage>();
+	    idle.put(key, images);
+	}
+	if (images.size() < capacity) {
+	    images.push(image);
+	}
+    }
+
+    private static String key(int width, int height, int type) {
+	return width + "x" + height + ":" + type;
+    }
+
+}
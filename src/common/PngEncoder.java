@@ -0,0 +1,361 @@
+package common;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PngEncoder writes RGB images as png to a stream. Rows are filtered in order
+ * and collected into blocks, and the blocks are compressed in parallel. Every
+ * block is compressed with the end of the previous block as dictionary and
+ * ends at a byte boundary, so the blocks together form one zlib stream that is
+ * as small as a sequential one. Compressed blocks are written as soon as they
+ * are done, only a few blocks are kept in memory, so images can be written in
+ * parts, see {@link #write(BufferedImage)}.
+ * 
+ * <pre>
+ * {@code
+ * try (PngEncoder encoder = new PngEncoder(out, width, height, 6)) {
+ *     encoder.write(image);
+ * }
+ * }
+ * </pre>
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class PngEncoder implements Closeable {
+
+    /** Size of the uncompressed blocks **/
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    /** Size of the dictionary, the window of deflate **/
+    private static final int DICT_SIZE = 32 * 1024;
+
+    /** The png signature **/
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    /** The stream that the png is written to **/
+    private DataOutputStream out;
+
+    /** Size of the image **/
+    private int width, height;
+
+    /** Compression level, 0 to 9 **/
+    private int level;
+
+    /** Executor that compresses the blocks **/
+    private Executor executor;
+
+    /** Max number of blocks that are being compressed **/
+    private int in_flight;
+
+    /** Blocks that are being compressed, in order **/
+    private Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<CompletableFuture<byte[]>>();
+
+    /** Checksum of all filtered rows **/
+    private Adler32 adler = new Adler32();
+
+    /** The filtered rows of the current block **/
+    private byte[] block;
+
+    /** Length of the current block **/
+    private int block_length;
+
+    /** The end of the last block, used as dictionary of the current block **/
+    private byte[] dict;
+
+    /** Pixels of the previous row and the current row **/
+    private byte[] prev_row, row;
+
+    /** Candidate filtered rows, one for each filter type **/
+    private byte[][] filtered;
+
+    /** Number of rows that have been written **/
+    private int rows;
+
+    /** True if the zlib header has been written **/
+    private boolean started;
+
+    /**
+     * Construct the encoder that compresses blocks by the common pool, or by the
+     * calling thread if there is only one processor
+     * 
+     * @param out    The stream that the png is written to
+     * @param width  Width of the image
+     * @param height Height of the image
+     * @param level  Compression level from 0 to 9, lower is faster but larger
+     * @throws IOException If the header cannot be written
+     */
+    public PngEncoder(OutputStream out, int width, int height, int level) throws IOException {
+	this(out, width, height, level,
+		ForkJoinPool.getCommonPoolParallelism() > 1 ? ForkJoinPool.commonPool() : Runnable::run);
+    }
+
+    /**
+     * Construct the encoder
+     * 
+     * @param out      The stream that the png is written to
+     * @param width    Width of the image
+     * @param height   Height of the image
+     * @param level    Compression level from 0 to 9, lower is faster but larger
+     * @param executor Executor that compresses the blocks
+     * @throws IOException If the header cannot be written
+     */
+    public PngEncoder(OutputStream out, int width, int height, int level, Executor executor) throws IOException {
+	if (width <= 0 || height <= 0) {
+	    throw new IllegalArgumentException("Size of the image must be positive");
+	}
+	if (level < 0 || level > 9) {
+	    throw new IllegalArgumentException("Compression level must be between 0 and 9");
+	}
+	this.out = new DataOutputStream(out);
+	this.width = width;
+	this.height = height;
+	this.level = level;
+	this.executor = executor;
+	in_flight = Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism());
+	int row_length = width * 3 + 1;
+	block = new byte[Math.max(BLOCK_SIZE, row_length)];
+	dict = new byte[0];
+	prev_row = new byte[width * 3];
+	row = new byte[width * 3];
+	filtered = new byte[5][row_length];
+	this.out.write(SIGNATURE);
+	// Header, 8 bits RGB without interlace
+	byte[] ihdr = new byte[13];
+	put_int(ihdr, 0, width);
+	put_int(ihdr, 4, height);
+	ihdr[8] = 8;
+	ihdr[9] = 2;
+	write_chunk("IHDR", ihdr, ihdr.length);
+    }
+
+    /**
+     * Write the rows of the image, the width must be the same as the width of the
+     * png. Large images can be written in parts by calling this method with
+     * images of consecutive rows in order.
+     * 
+     * @param image Image of the next rows
+     * @throws IOException If the png cannot be written
+     */
+    public void write(BufferedImage image) throws IOException {
+	if (image.getWidth() != width) {
+	    throw new IllegalArgumentException("Width of the image must be " + width);
+	}
+	if (rows + image.getHeight() > height) {
+	    throw new IllegalArgumentException("The png only has " + height + " rows");
+	}
+	Raster raster = image.getRaster();
+	boolean packed = image.getType() == BufferedImage.TYPE_INT_RGB
+		|| image.getType() == BufferedImage.TYPE_INT_ARGB;
+	int[] pixels = new int[width];
+	for (int y = 0; y < image.getHeight(); y++) {
+	    if (packed && raster.getTransferType() == DataBuffer.TYPE_INT) {
+		raster.getDataElements(0, y, width, 1, pixels);
+	    } else {
+		image.getRGB(0, y, width, 1, pixels, 0, width);
+	    }
+	    for (int x = 0; x < width; x++) {
+		int p = pixels[x];
+		row[x * 3] = (byte) (p >> 16);
+		row[x * 3 + 1] = (byte) (p >> 8);
+		row[x * 3 + 2] = (byte) p;
+	    }
+	    write_row(filter());
+	    byte[] t = prev_row;
+	    prev_row = row;
+	    row = t;
+	    rows++;
+	}
+    }
+
+    /**
+     * Finish the png, all rows must have been written
+     * 
+     * @throws IOException If the png cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+	if (rows != height) {
+	    throw new IOException("Only " + rows + " of " + height + " rows were written");
+	}
+	submit(true);
+	while (!pending.isEmpty()) {
+	    write_block();
+	}
+	write_chunk("IEND", new byte[0], 0);
+	out.flush();
+    }
+
+    // Filter the current row, the filter that has the smallest sum of absolute
+    // differences is chosen, only Sub is tried for the fastest levels
+    private byte[] filter() {
+	byte[] best = null;
+	long best_sum = Long.MAX_VALUE;
+	for (int type = level <= 1 ? 1 : 0; type < (level <= 1 ? 2 : 5); type++) {
+	    long sum = filter(type, filtered[type]);
+	    if (sum < best_sum) {
+		best_sum = sum;
+		best = filtered[type];
+	    }
+	}
+	return best;
+    }
+
+    // Filter the current row with the given filter type, return the sum of
+    // absolute differences
+    private long filter(int type, byte[] f) {
+	int bpp = 3;
+	int n = row.length;
+	f[0] = (byte) type;
+	long sum = 0;
+	for (int i = 0; i < n; i++) {
+	    int x = row[i] & 0xff;
+	    int v;
+	    switch (type) {
+	    case 1:
+		v = x - (i >= bpp ? row[i - bpp] & 0xff : 0);
+		break;
+	    case 2:
+		v = x - (prev_row[i] & 0xff);
+		break;
+	    case 3:
+		v = x - (((i >= bpp ? row[i - bpp] & 0xff : 0) + (prev_row[i] & 0xff)) >> 1);
+		break;
+	    case 4:
+		v = x - paeth(i >= bpp ? row[i - bpp] & 0xff : 0, prev_row[i] & 0xff,
+			i >= bpp ? prev_row[i - bpp] & 0xff : 0);
+		break;
+	    default:
+		v = x;
+	    }
+	    f[i + 1] = (byte) v;
+	    sum += Math.abs((byte) v);
+	}
+	return sum;
+    }
+
+    private static int paeth(int a, int b, int c) {
+	int p = a + b - c;
+	int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+	if (pa <= pb && pa <= pc) {
+	    return a;
+	}
+	return pb <= pc ? b : c;
+    }
+
+    // Add a filtered row to the current block, the block is compressed when it
+    // is full
+    private void write_row(byte[] f) throws IOException {
+	if (block_length + f.length > block.length) {
+	    submit(false);
+	}
+	System.arraycopy(f, 0, block, block_length, f.length);
+	block_length += f.length;
+    }
+
+    // Compress the current block in parallel and start a new one
+    private void submit(boolean last) throws IOException {
+	final byte[] data = Arrays.copyOf(block, block_length);
+	final byte[] dictionary = dict;
+	final boolean header = !started;
+	adler.update(data);
+	final long checksum = adler.getValue();
+	started = true;
+	pending.add(CompletableFuture.supplyAsync(() -> deflate(data, dictionary, header, last, checksum), executor));
+	// The end of this block is the dictionary of the next one
+	int length = Math.min(DICT_SIZE, data.length);
+	dict = Arrays.copyOfRange(data, data.length - length, data.length);
+	block_length = 0;
+	while (pending.size() >= in_flight) {
+	    write_block();
+	}
+    }
+
+    // Compress a block to raw deflate data that ends at a byte boundary, the zlib
+    // header and checksum are added to the first and last blocks
+    private byte[] deflate(byte[] data, byte[] dictionary, boolean header, boolean last, long checksum) {
+	Deflater deflater = new Deflater(level, true);
+	try {
+	    if (dictionary.length > 0) {
+		deflater.setDictionary(dictionary);
+	    }
+	    deflater.setInput(data);
+	    if (last) {
+		deflater.finish();
+	    }
+	    byte[] buf = new byte[data.length + data.length / 1000 + 64];
+	    int length = 0;
+	    if (header) {
+		buf[0] = 0x78;
+		buf[1] = (byte) (level < 2 ? 0x01 : level < 6 ? 0x5e : level == 6 ? 0x9c : 0xda);
+		length = 2;
+	    }
+	    while (true) {
+		if (length == buf.length) {
+		    buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+		int space = buf.length - length;
+		int n = deflater.deflate(buf, length, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+		length += n;
+		// Flushing is done when the output does not fill the space
+		if (last ? deflater.finished() : n < space) {
+		    break;
+		}
+	    }
+	    if (last) {
+		buf = Arrays.copyOf(buf, length + 4);
+		put_int(buf, length, (int) checksum);
+		length += 4;
+	    }
+	    return Arrays.copyOf(buf, length);
+	} finally {
+	    deflater.end();
+	}
+    }
+
+    // Wait for the oldest block and write it
+    private void write_block() throws IOException {
+	byte[] data;
+	try {
+	    data = pending.poll().join();
+	} catch (CompletionException e) {
+	    throw new IOException(e.getCause());
+	}
+	write_chunk("IDAT", data, data.length);
+    }
+
+    private void write_chunk(String type, byte[] data, int length) throws IOException {
+	byte[] t = type.getBytes("US-ASCII");
+	CRC32 crc = new CRC32();
+	crc.update(t);
+	crc.update(data, 0, length);
+	out.writeInt(length);
+	out.write(t);
+	out.write(data, 0, length);
+	out.writeInt((int) crc.getValue());
+    }
+
+    private static void put_int(byte[] b, int offset, int v) {
+	b[offset] = (byte) (v >>> 24);
+	b[offset + 1] = (byte) (v >>> 16);
+	b[offset + 2] = (byte) (v >>> 8);
+	b[offset + 3] = (byte) v;
+    }
+
+}
@@ -0,0 +1,427 @@
+package common;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Rasterizer draws lines, rectangles and circles straight into the pixels of
+ * an image, without Java2D. Java2D checks its states for every shape that is
+ * drawn, which costs more than drawing the shape itself when there are
+ * millions of small ones, therefore, components draw large amounts of points
+ * and lines with it when they render on images. Lines are one pixel wide, and
+ * they are drawn by a digital differential analyzer, or by Wu's algorithm if
+ * antialiasing is enabled in the graphics.<br>
+ *
+ * The rasterizer of a graphics is only available if the graphics is created by
+ * {@link #createGraphics(BufferedImage)}, and it is not scaled, rotated or
+ * clipped by shapes other than rectangles. Images that are rendered in tiles
+ * are rasterized in parallel, since tiles do not share pixels, see
+ * {@link common.RenderPanel#render(BufferedImage, int, java.util.concurrent.Executor)}.
+ * Taking the pixels of an image stops Java2D from accelerating it, so images
+ * that are drawn on screen every frame should not be created by
+ * {@link #createGraphics(BufferedImage)}, they can be copied from one that is,
+ * as the cache of {@link common.RenderPanel} is.
+ *
+ * <pre>
+ * {@code
+ * Rasterizer r = Rasterizer.of(g2d);
+ * if (r != null) {
+ *     r.line(0, 0, 100, 100);
+ * } else {
+ *     g2d.draw(new Line2D.Double(0, 0, 100, 100));
+ * }
+ * }
+ * </pre>
+ *
+ * @author Daniel Xu
+ *
+ */
+public class Rasterizer {
+
+    /** Key of the hint that holds the image that the graphics renders on **/
+    public static final RenderingHints.Key KEY_IMAGE = new RenderingHints.Key(0x6a706c) {
+	@Override
+	public boolean isCompatibleValue(Object val) {
+	    return val == null || val instanceof BufferedImage;
+	}
+    };
+
+    /** Pixels of the image **/
+    private int[] data;
+
+    /** Index of the pixel (0,0) in the data, and the length of the rows **/
+    private int offset, stride;
+
+    /** Type of the image **/
+    private int type;
+
+    /** The area that can be drawn in pixels, the ends are excluded **/
+    private int min_x, min_y, max_x, max_y;
+
+    /** Translation from the user space to pixels **/
+    private double tx, ty;
+
+    /** True if shapes are antialiased **/
+    private boolean antialias;
+
+    /** True if rectangles are moved to quarters of pixels as Java2D does **/
+    private boolean normalize;
+
+    /** Components of the color **/
+    private int argb, alpha;
+
+    private Rasterizer() {
+    }
+
+    /**
+     * Create the graphics of the image, whose rasterizer is available for
+     * components, see {@link #of(Graphics2D)}
+     *
+     * @param image The image
+     * @return Graphics2D of the image
+     */
+    public static Graphics2D createGraphics(BufferedImage image) {
+	Graphics2D g = image.createGraphics();
+	g.setRenderingHint(KEY_IMAGE, image);
+	return g;
+    }
+
+    /**
+     * Get the rasterizer that draws on the same pixels as the graphics, with its
+     * current translation, clip, color and antialiasing. The rasterizer does not
+     * follow later changes of the graphics.
+     *
+     * @param g The graphics
+     * @return The rasterizer, or null if the graphics cannot be rasterized
+     *         directly
+     */
+    public static Rasterizer of(Graphics2D g) {
+	Object hint = g.getRenderingHint(KEY_IMAGE);
+	if (!(hint instanceof BufferedImage)) {
+	    return null;
+	}
+	BufferedImage image = (BufferedImage) hint;
+	int type = image.getType();
+	if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB
+		&& type != BufferedImage.TYPE_INT_ARGB_PRE) {
+	    return null;
+	}
+	AffineTransform t = g.getTransform();
+	if ((t.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+	    return null;
+	}
+	Composite c = g.getComposite();
+	if (!(c instanceof AlphaComposite) || ((AlphaComposite) c).getRule() != AlphaComposite.SRC_OVER
+		|| ((AlphaComposite) c).getAlpha() != 1) {
+	    return null;
+	}
+	Rectangle area = new Rectangle(0, 0, image.getWidth(), image.getHeight());
+	Shape clip = g.getClip();
+	if (clip != null) {
+	    if (!(clip instanceof Rectangle2D)) {
+		return null;
+	    }
+	    // Pixels are in the clip if their centers are
+	    Rectangle2D r = (Rectangle2D) clip;
+	    int x0 = (int) Math.ceil(r.getMinX() + t.getTranslateX() - 0.5);
+	    int y0 = (int) Math.ceil(r.getMinY() + t.getTranslateY() - 0.5);
+	    int x1 = (int) Math.ceil(r.getMaxX() + t.getTranslateX() - 0.5);
+	    int y1 = (int) Math.ceil(r.getMaxY() + t.getTranslateY() - 0.5);
+	    area = area.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+	}
+	WritableRaster raster = image.getRaster();
+	Rasterizer r = new Rasterizer();
+	r.data = ((DataBufferInt) raster.getDataBuffer()).getData();
+	r.stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+	// Images may be parts of larger ones, see BufferedImage.getSubimage
+	r.offset = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateY() * r.stride
+		- raster.getSampleModelTranslateX();
+	r.type = type;
+	r.min_x = area.x;
+	r.min_y = area.y;
+	r.max_x = area.x + Math.max(0, area.width);
+	r.max_y = area.y + Math.max(0, area.height);
+	r.tx = t.getTranslateX();
+	r.ty = t.getTranslateY();
+	r.antialias = RenderingHints.VALUE_ANTIALIAS_ON.equals(g.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+	r.normalize = !RenderingHints.VALUE_STROKE_PURE
+		.equals(g.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL));
+	r.setColor(g.getColor());
+	return r;
+    }
+
+    /**
+     * Get the rasterizer of the graphics if the given number of shapes should be
+     * drawn directly, which is when high quality is disabled, the graphics renders
+     * a draft or there are more shapes than <code>raster_shapes</code> in the
+     * configuration, see
+     * {@link #of(Graphics2D)}
+     *
+     * @param g      The graphics
+     * @param config The configuration
+     * @param shapes Number of shapes that will be drawn
+     * @return The rasterizer, or null if the shapes should be drawn by Java2D
+     */
+    public static Rasterizer of(Graphics2D g, BaseConfig config, int shapes) {
+	if (config.high_quality && shapes <= config.raster_shapes && !RenderPanel.is_draft(g)) {
+	    return null;
+	}
+	return of(g);
+    }
+
+    /**
+     * Set the color of the shapes that will be drawn
+     *
+     * @param c Color
+     */
+    public void setColor(Color c) {
+	argb = c.getRGB();
+	alpha = c.getAlpha();
+    }
+
+    /**
+     * Fill a rectangle in the user space of the graphics
+     *
+     * @param x      x value of the top left corner
+     * @param y      y value of the top left corner
+     * @param width  Width of the rectangle
+     * @param height Height of the rectangle
+     */
+    public void fill_rect(double x, double y, double width, double height) {
+	double x0 = x + tx, y0 = y + ty, x1 = x0 + width, y1 = y0 + height;
+	if (!antialias) {
+	    if (normalize) {
+		x0 = Math.floor(x0 + 0.25) + 0.25;
+		y0 = Math.floor(y0 + 0.25) + 0.25;
+		x1 = Math.floor(x1 + 0.25) + 0.25;
+		y1 = Math.floor(y1 + 0.25) + 0.25;
+	    }
+	    // Pixels are filled if their centers are inside
+	    int px0 = Math.max(min_x, (int) Math.ceil(x0 - 0.5)), px1 = Math.min(max_x, (int) Math.ceil(x1 - 0.5));
+	    int py0 = Math.max(min_y, (int) Math.ceil(y0 - 0.5)), py1 = Math.min(max_y, (int) Math.ceil(y1 - 0.5));
+	    for (int py = py0; py < py1; py++) {
+		int row = offset + py * stride;
+		span(row + px0, row + px1, 255);
+	    }
+	    return;
+	}
+	// Pixels are covered by the part of them that is inside, the columns
+	// between ix0 and ix1 are inside entirely
+	int px0 = Math.max(min_x, (int) Math.floor(x0)), px1 = Math.min(max_x, (int) Math.ceil(x1));
+	int py0 = Math.max(min_y, (int) Math.floor(y0)), py1 = Math.min(max_y, (int) Math.ceil(y1));
+	int ix0 = Math.max(px0, Math.min(px1, (int) Math.ceil(x0)));
+	int ix1 = Math.max(ix0, Math.min(px1, (int) Math.floor(x1)));
+	for (int py = py0; py < py1; py++) {
+	    double cy = Math.min(py + 1, y1) - Math.max(py, y0);
+	    int row = offset + py * stride;
+	    for (int px = px0; px < ix0; px++) {
+		double cx = Math.min(px + 1, x1) - Math.max(px, x0);
+		blend(row + px, (int) (cx * cy * 255 + 0.5));
+	    }
+	    span(row + ix0, row + ix1, (int) (cy * 255 + 0.5));
+	    for (int px = ix1; px < px1; px++) {
+		double cx = Math.min(px + 1, x1) - Math.max(px, x0);
+		blend(row + px, (int) (cx * cy * 255 + 0.5));
+	    }
+	}
+    }
+
+    /**
+     * Fill a circle in the user space of the graphics
+     *
+     * @param cx     x value of the center
+     * @param cy     y value of the center
+     * @param radius Radius of the circle
+     */
+    public void fill_circle(double cx, double cy, double radius) {
+	cx += tx;
+	cy += ty;
+	double r2 = radius * radius;
+	if (!antialias) {
+	    int py0 = Math.max(min_y, (int) Math.ceil(cy - radius - 0.5));
+	    int py1 = Math.min(max_y, (int) Math.floor(cy + radius - 0.5) + 1);
+	    for (int py = py0; py < py1; py++) {
+		double dy = py + 0.5 - cy;
+		if (dy * dy > r2) {
+		    continue;
+		}
+		// The span of pixels whose centers are inside
+		double half = Math.sqrt(r2 - dy * dy);
+		int px0 = Math.max(min_x, (int) Math.ceil(cx - half - 0.5));
+		int px1 = Math.min(max_x, (int) Math.floor(cx + half - 0.5) + 1);
+		int row = offset + py * stride;
+		for (int px = px0; px < px1; px++) {
+		    blend(row + px, 255);
+		}
+	    }
+	    return;
+	}
+	// Pixels are covered by how far their centers are inside, within a pixel
+	int px0 = Math.max(min_x, (int) Math.floor(cx - radius)), px1 = Math.min(max_x, (int) Math.ceil(cx + radius));
+	int py0 = Math.max(min_y, (int) Math.floor(cy - radius)), py1 = Math.min(max_y, (int) Math.ceil(cy + radius));
+	for (int py = py0; py < py1; py++) {
+	    double dy = py + 0.5 - cy;
+	    int row = offset + py * stride;
+	    for (int px = px0; px < px1; px++) {
+		double dx = px + 0.5 - cx;
+		double coverage = radius + 0.5 - Math.sqrt(dx * dx + dy * dy);
+		if (coverage > 0) {
+		    blend(row + px, coverage >= 1 ? 255 : (int) (coverage * 255 + 0.5));
+		}
+	    }
+	}
+    }
+
+    /**
+     * Draw a line that is one pixel wide in the user space of the graphics. The
+     * pixels of a line do not depend on the clip, so lines that cross tiles have
+     * no seams.
+     *
+     * @param x0 x value of the start
+     * @param y0 y value of the start
+     * @param x1 x value of the end
+     * @param y1 y value of the end
+     */
+    public void line(double x0, double y0, double x1, double y1) {
+	// Pixels are centered at halves, the algorithms center them at integers
+	x0 += tx - 0.5;
+	y0 += ty - 0.5;
+	x1 += tx - 0.5;
+	y1 += ty - 0.5;
+	// The line is walked along its longer axis, called a, the other one is b
+	boolean steep = Math.abs(y1 - y0) > Math.abs(x1 - x0);
+	double a0 = steep ? y0 : x0, b0 = steep ? x0 : y0, a1 = steep ? y1 : x1, b1 = steep ? x1 : y1;
+	if (a0 > a1) {
+	    double t = a0;
+	    a0 = a1;
+	    a1 = t;
+	    t = b0;
+	    b0 = b1;
+	    b1 = t;
+	}
+	double gradient = a1 == a0 ? 0 : (b1 - b0) / (a1 - a0);
+	// Only the part of the line that is in the area, with a pixel around it for
+	// antialiasing, is walked, so lines that are mostly outside do not take long
+	double a_min = (steep ? min_y : min_x) - 1, a_max = steep ? max_y : max_x;
+	double b_min = (steep ? min_x : min_y) - 1, b_max = steep ? max_x : max_y;
+	double start = Math.max(a0, a_min), end = Math.min(a1, a_max);
+	if (gradient > 0) {
+	    start = Math.max(start, a0 + (b_min - b0) / gradient);
+	    end = Math.min(end, a0 + (b_max - b0) / gradient);
+	} else if (gradient < 0) {
+	    start = Math.max(start, a0 + (b_max - b0) / gradient);
+	    end = Math.min(end, a0 + (b_min - b0) / gradient);
+	} else if (b0 < b_min || b0 > b_max) {
+	    return;
+	}
+	if (start > end) {
+	    return;
+	}
+	int first = (int) Math.round(a0), last = (int) Math.round(a1);
+	int from = (int) Math.round(start), to = (int) Math.round(end);
+	for (int a = from; a <= to; a++) {
+	    // Pixels are found from the whole line rather than the clipped one
+	    double b = b0 + (a - a0) * gradient;
+	    if (!antialias) {
+		int ib = (int) Math.round(b);
+		if (steep)
+		    plot(ib, a, 255);
+		else
+		    plot(a, ib, 255);
+		continue;
+	    }
+	    // Wu's algorithm, the ends are covered by how much of the pixel the line
+	    // reaches, and the two pixels across the line share the rest
+	    double coverage = 1;
+	    if (first == last) {
+		coverage = a1 - a0;
+	    } else if (a == first) {
+		coverage = 1 - fraction(a0 + 0.5);
+	    } else if (a == last) {
+		coverage = fraction(a1 + 0.5);
+	    }
+	    int ib = (int) Math.floor(b);
+	    double f = b - ib;
+	    int c0 = (int) ((1 - f) * coverage * 255 + 0.5), c1 = (int) (f * coverage * 255 + 0.5);
+	    if (steep) {
+		plot(ib, a, c0);
+		plot(ib + 1, a, c1);
+	    } else {
+		plot(a, ib, c0);
+		plot(a, ib + 1, c1);
+	    }
+	}
+    }
+
+    private static double fraction(double v) {
+	return v - Math.floor(v);
+    }
+
+    private void plot(int x, int y, int coverage) {
+	if (x >= min_x && x < max_x && y >= min_y && y < max_y && coverage > 0) {
+	    if (coverage == 255 && alpha == 255)
+		data[offset + y * stride + x] = argb;
+	    else
+		blend(offset + y * stride + x, coverage);
+	}
+    }
+
+    // Blend the color over the pixels from one index to another one excluded
+    private void span(int from, int to, int coverage) {
+	if (coverage == 255 && alpha == 255 && from < to) {
+	    Arrays.fill(data, from, to, argb);
+	    return;
+	}
+	for (int i = from; i < to; i++) {
+	    blend(i, coverage);
+	}
+    }
+
+    // Blend the color over the pixel, the coverage is from 0 to 255
+    private void blend(int i, int coverage) {
+	int a = coverage == 255 ? alpha : (alpha * coverage + 127) / 255;
+	if (a == 255) {
+	    data[i] = argb;
+	    return;
+	}
+	if (a == 0) {
+	    return;
+	}
+	int d = data[i];
+	int na = 255 - a;
+	int r = (argb >> 16) & 0xff, g = (argb >> 8) & 0xff, b = argb & 0xff;
+	int dr = (d >> 16) & 0xff, dg = (d >> 8) & 0xff, db = d & 0xff;
+	switch (type) {
+	case BufferedImage.TYPE_INT_RGB:
+	    data[i] = ((r * a + dr * na + 127) / 255) << 16 | ((g * a + dg * na + 127) / 255) << 8
+		    | ((b * a + db * na + 127) / 255);
+	    break;
+	case BufferedImage.TYPE_INT_ARGB_PRE: {
+	    int da = d >>> 24;
+	    data[i] = ((a + (da * na + 127) / 255) << 24) | ((r * a + dr * na + 127) / 255) << 16
+		    | ((g * a + dg * na + 127) / 255) << 8 | ((b * a + db * na + 127) / 255);
+	    break;
+	}
+	default: {
+	    // Colors are not premultiplied, they are weighted by their alpha
+	    int da = (d >>> 24) * na / 255;
+	    int oa = a + da;
+	    data[i] = (oa << 24) | ((r * a + dr * da + oa / 2) / oa) << 16 | ((g * a + dg * da + oa / 2) / oa) << 8
+		    | ((b * a + db * da + oa / 2) / oa);
+	}
+	}
+    }
+
+}
@@ -3,11 +3,24 @@ package common;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import common.events.LayerEvent;
 
 /**
  * RenderPanel extends JPanel, which means it can be used as an component in
@@ -19,18 +32,108 @@ import javax.swing.JPanel;
  * nothing being added, only the background will be shown. The layers of the
  * renderable objects depend on the orders that they were being added. The first
  * added renderable object will be at the bottom and the last will be on top.
+ * Static objects at the bottom are rendered into a cached image, see
+ * {@link common.Renderable#isStatic()}. If progressive rendering is enabled,
+ * see {@link common.BaseConfig#progressive}, a draft of them is rendered and
+ * shown right away when they change, and they are rendered in full quality in
+ * background, so slow objects do not block the event dispatch thread. The
+ * draft is replaced once the full quality is rendered.
  * 
  * @author Daniel Xu
  *
  */
 public class RenderPanel extends JPanel {
 
+    /**
+     * Rendering hint that marks a draft, its value is <code>Boolean.TRUE</code>
+     * on drafts, see {@link #is_draft(Graphics2D)}
+     **/
+    public static final RenderingHints.Key KEY_DRAFT = new RenderingHints.Key(0) {
+	@Override
+	public boolean isCompatibleValue(Object val) {
+	    return val instanceof Boolean;
+	}
+    };
+
     /** Configuration **/
     protected BaseConfig config;
 
     /** List of renderable objects **/
     protected List<Renderable> renderlist;
 
+    /** Versions that are watched, see {@link #watch(LongSupplier)} **/
+    private List<LongSupplier> watched = new ArrayList<LongSupplier>();
+
+    /** Sum of the watched versions when they were checked last time **/
+    private long watched_sum;
+
+    /** Task that checks the watched versions every frame **/
+    private Runnable watcher;
+
+    /** Region that is requested to be repainted in the next frame **/
+    private Rectangle requested;
+
+    /** Nanoseconds when the last frame started to be painted **/
+    private volatile long frame_start;
+
+    /** True if the last frame took too long, optional objects are skipped **/
+    private boolean shedding;
+
+    /** True if the cache is a draft because of shedding **/
+    private boolean cache_draft;
+
+    /** Statistics of the rendering, null until they are asked for **/
+    private volatile FrameStats stats;
+
+    /** Shows the statistics on top, null until it is enabled **/
+    private StatsHud hud;
+
+    /**
+     * Cached image of the static objects at the bottom, the front buffer. It is
+     * drawn on by {@link common.Rasterizer}, which takes its pixels, so Java2D no
+     * longer accelerates drawing it
+     **/
+    private BufferedImage cache;
+
+    /**
+     * Copy of the cache that is drawn on screen, nothing takes its pixels so
+     * Java2D can keep it accelerated. It is copied when the cache changes
+     **/
+    private BufferedImage screen;
+
+    /** True if the cache changed since it was copied to the screen image **/
+    private boolean screen_stale;
+
+    /** Width and height in pixels of the cache when the frames are rendered **/
+    private int cache_width, cache_height;
+
+    /** Sum of the versions of the cached objects **/
+    private long cache_version;
+
+    /** False if the cache needs to be rendered again **/
+    private boolean cache_valid;
+
+    /** Region of the cache that needs to be rendered again, null if none **/
+    private Rectangle dirty;
+
+    /** Sum of the versions of the cached objects after the dirty changes **/
+    private long dirty_version;
+
+    /** Lock of the cache states, they can be invalidated by other threads **/
+    private final Object cache_lock = new Object();
+
+    /** The image that the next frame is rendered on, the back buffer **/
+    private BufferedImage back;
+
+    /** The frame being rendered in background, null if the cache is complete **/
+    private Future<?> rendering;
+
+    /** Increased every time a frame is requested, so stale frames stop **/
+    private volatile long generation;
+
+    /** Region of the cache that was rendered again during the rendering **/
+    private Rectangle changed;
+
     /**
      * Construct the RenderPanel by providing {@link common.BaseConfig}. In the
      * constructor, the preferredsize will be set accordingly and also an arraylist
@@ -46,27 +149,68 @@ public class RenderPanel extends JPanel {
 	renderlist.add(new Renderable() {
 	    @Override
 	    public void render(Graphics g) {
-		if (config.high_quality) {
-		    Graphics2D g2d = (Graphics2D) g;
-		    g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-		    g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-		    g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		    g2d.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, 100);
-		    g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
-			    RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-		    g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
-			    RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-		    g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-		    g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-		}
+		render_hints((Graphics2D) g);
 		// Background
 		g.setColor(config.background_color);
 		g.fillRect(0, 0, config.width, config.height);
 	    }
+
+	    @Override
+	    public boolean isStatic() {
+		return true;
+	    }
+	});
+	// Changes are committed against the variables that the graph is created
+	// with, and they are shown by the next frame
+	config.commit();
+	config.addListener((c, group) -> {
+	    if (isDisplayable()) {
+		repaint();
+	    }
 	});
     }
 
+    /**
+     * Apply the rendering hints for high quality if it is enabled in the
+     * configuration
+     * 
+     * @param g2d Graphics2D
+     */
+    protected void render_hints(Graphics2D g2d) {
+	if (config.high_quality && !is_draft(g2d)) {
+	    g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+	    g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+	    g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+	    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+	    g2d.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, 100);
+	    g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+	    g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
+		    RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+	    g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+	    g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+	}
+    }
+
+    /**
+     * Check if the graphics renders a draft, which is shown until the graph is
+     * rendered in full quality, see {@link common.BaseConfig#progressive}.
+     * Renderable objects may render less details on drafts so they are shown
+     * quickly. Drafts are marked by {@link #KEY_DRAFT}, other rendering hints do
+     * not make a draft.
+     * 
+     * @param g2d Graphics2D
+     * @return True if the graphics renders a draft
+     */
+    public static boolean is_draft(Graphics2D g2d) {
+	return Boolean.TRUE.equals(g2d.getRenderingHint(KEY_DRAFT));
+    }
+
+    // Mark the graphics as a draft, it is rendered for speed as well
+    private static void draft(Graphics2D g2d) {
+	g2d.setRenderingHint(KEY_DRAFT, Boolean.TRUE);
+	g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+    }
+
     /**
      * Add a renderable object to the list in order to render it on screen. The
      * layers of the renderable objects depend on the orders that they were being
@@ -79,17 +223,585 @@ public class RenderPanel extends JPanel {
 	renderlist.add(o);
     }
 
+    /**
+     * Watch a version of the data that this panel renders, such as
+     * {@link grapher.util.PointSeries#version()}. The versions are checked once
+     * per frame by {@link common.RenderScheduler}, and the panel will be
+     * repainted if any of them changed. It is used when the data is modified by
+     * other threads continuously, so the panel does not need to be repainted for
+     * every modification. Versions should only grow. This method can be called on
+     * any thread, the version is watched on the event dispatch thread. The
+     * versions are only checked while the panel is in a window.
+     * 
+     * @param version Supplies the current version of the data
+     */
+    public void watch(LongSupplier version) {
+	if (!SwingUtilities.isEventDispatchThread()) {
+	    // The watched versions are only accessed on the event dispatch thread
+	    SwingUtilities.invokeLater(() -> watch(version));
+	    return;
+	}
+	watched.add(version);
+	watched_sum += version.getAsLong();
+	if (watcher == null) {
+	    watcher = () -> {
+		long sum = 0;
+		for (int i = 0; i < watched.size(); i++) {
+		    sum += watched.get(i).getAsLong();
+		}
+		if (sum != watched_sum) {
+		    watched_sum = sum;
+		    if (isShowing()) {
+			repaint();
+		    }
+		}
+	    };
+	    if (isDisplayable()) {
+		RenderScheduler.add(watcher);
+	    }
+	}
+    }
+
+    /**
+     * The versions are only watched while the panel is in a window, so panels
+     * that are only rendered by {@link #render(Graphics2D)} have no tasks
+     */
+    @Override
+    public void addNotify() {
+	super.addNotify();
+	if (watcher != null) {
+	    RenderScheduler.add(watcher);
+	}
+    }
+
+    @Override
+    public void removeNotify() {
+	if (watcher != null) {
+	    RenderScheduler.remove(watcher);
+	}
+	// The frame being rendered is not shown, it is rendered again when the panel
+	// is shown again
+	stop_rendering();
+	invalidate_layers();
+	super.removeNotify();
+    }
+
+    /**
+     * Repaint requests are handed to Swing by {@link common.RenderScheduler} at
+     * most once per frame, see {@link common.BaseConfig#frame_rate}, the regions
+     * that are requested between two frames are merged.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+	if (config == null) {
+	    // Requested by the constructors of the parent classes
+	    super.repaint(tm, x, y, width, height);
+	    return;
+	}
+	Rectangle r = new Rectangle(x, y, width, height);
+	synchronized (cache_lock) {
+	    requested = requested == null ? r : requested.union(r);
+	}
+	RenderScheduler.request(this);
+    }
+
+    // Nanoseconds until the next frame can be painted
+    long frame_wait(long now) {
+	return frame_start + 1000000000L / Math.max(1, config.frame_rate) - now;
+    }
+
+    // Hand the requested region to Swing
+    void flush_repaint() {
+	Rectangle r;
+	synchronized (cache_lock) {
+	    r = requested;
+	    requested = null;
+	}
+	if (r != null) {
+	    // The statistics change every frame, so the HUD is painted again with any
+	    // region
+	    Rectangle h = config.show_stats && hud != null ? hud.bounds() : null;
+	    if (h != null) {
+		r = r.union(h);
+	    }
+	    super.repaint(0, r.x, r.y, r.width, r.height);
+	}
+    }
+
+    /**
+     * Render all renderable objects on the given Graphics2D directly, without
+     * Swing painting and the cached image. It is used to render the graph without
+     * a window, such as exporting images in headless mode.
+     * 
+     * @param g Graphics2D
+     */
+    public void render(Graphics2D g) {
+	render_layers(g, begin_render());
+    }
+
+    /**
+     * Render all renderable objects on the given image in parallel, see
+     * {@link #render(Graphics2D)}. The image is split into square tiles, and each
+     * tile is rendered by the executor on its own Graphics2D that is clipped to
+     * the tile, so renderable objects must be safe to render concurrently. Since
+     * every tile shares the same raster, no composition is needed afterward.
+     * 
+     * @param image    The image, usually has the width and height in the
+     *                 configuration
+     * @param tile     Size of the tiles in pixels
+     * @param executor The executor that renders the tiles
+     * @throws CancellationException if the thread is interrupted while waiting
+     *                               for the tiles, the interrupt is kept
+     */
+    public void render(BufferedImage image, int tile, Executor executor) {
+	if (tile <= 0) {
+	    throw new IllegalArgumentException("Size of the tiles must be positive");
+	}
+	List<Renderable> objects = begin_render();
+	List<CompletableFuture<Void>> tiles = new ArrayList<CompletableFuture<Void>>();
+	for (int y = 0; y < image.getHeight(); y += tile) {
+	    for (int x = 0; x < image.getWidth(); x += tile) {
+		final int tx = x, ty = y;
+		final int tw = Math.min(tile, image.getWidth() - x), th = Math.min(tile, image.getHeight() - y);
+		tiles.add(CompletableFuture.runAsync(() -> {
+		    Graphics2D g = Rasterizer.createGraphics(image.getSubimage(tx, ty, tw, th));
+		    try {
+			// The tile shows the same area of the graph as it does on the image,
+			// the clip lets renderable objects skip what is outside the tile
+			g.translate(-tx, -ty);
+			g.clip(new Rectangle(tx, ty, tw, th));
+			render_layers(g, objects);
+		    } finally {
+			g.dispose();
+		    }
+		}, executor));
+	    }
+	}
+	CompletableFuture<Void> all = CompletableFuture.allOf(tiles.toArray(new CompletableFuture<?>[tiles.size()]));
+	try {
+	    all.get();
+	} catch (InterruptedException e) {
+	    // Tiles that have not started are skipped, the image is incomplete
+	    for (CompletableFuture<Void> t : tiles) {
+		t.cancel(false);
+	    }
+	    Thread.currentThread().interrupt();
+	    CancellationException c = new CancellationException("Interrupted while rendering");
+	    c.initCause(e);
+	    throw c;
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    if (e.getCause() instanceof Error) {
+		throw (Error) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	}
+    }
+
+    // Prepare for rendering without Swing painting and get the snapshots of the
+    // renderable objects to render. It runs on the calling thread, snapshots do
+    // not change with the graph, and parts of the image that are rendered
+    // separately are consistent since they render the same snapshots
+    List<Renderable> begin_render() {
+	prepare();
+	return snapshot(renderlist);
+    }
+
+    // Render the snapshots of the renderable objects without preparing
+    void render_layers(Graphics2D g, List<Renderable> objects) {
+	for (Renderable r : objects) {
+	    paint(r, g, false, true);
+	}
+    }
+
+    // Take the snapshots of the renderable objects with a snapshot of the
+    // configuration, so other threads can render them while the configuration is
+    // changed on the event dispatch thread
+    private List<Renderable> snapshot(List<Renderable> objects) {
+	BaseConfig view = config.snapshot();
+	List<Renderable> l = new ArrayList<Renderable>(objects.size());
+	for (Renderable r : objects) {
+	    Renderable s = r.snapshot(view);
+	    l.add(s == r ? r : new View(r, s));
+	}
+	return l;
+    }
+
+    /**
+     * Called before the renderable objects are rendered, both on screen and by
+     * {@link #render(Graphics2D)}. Children classes may override it to update
+     * the configuration or data before rendering. It is called on the thread that
+     * renders, which is not the event dispatch thread when the graph is rendered
+     * without a window, so changes of the configuration must be committed, see
+     * {@link common.BaseConfig#commit()}.
+     */
+    protected void prepare() {
+    }
+
+    /**
+     * Mark the cached image of static objects as stale, so they will be rendered
+     * again in the next repaint. It should be called when something that the
+     * static objects depend on is changed but their versions are not. Changes of
+     * the configuration are found by its version, see
+     * {@link common.BaseConfig#commit()}.
+     */
+    public void invalidate_layers() {
+	synchronized (cache_lock) {
+	    cache_valid = false;
+	}
+    }
+
+    /**
+     * Mark only a region of the cached image as stale, it is used when a change of
+     * the static objects only affects a small area, such as new points. The
+     * change is given by the versions before and after it, so the cache can tell
+     * if there are other changes and render everything again if so. The region
+     * still needs to be repainted by {@link #repaint(Rectangle)}.
+     * 
+     * @param r    The region in pixels
+     * @param from The version of the static objects before the change, see
+     *             {@link #layers_version()}
+     */
+    public void invalidate_region(Rectangle r, long from) {
+	long to = layers_version();
+	synchronized (cache_lock) {
+	    if (from == (dirty == null ? cache_version : dirty_version)) {
+		dirty = dirty == null ? new Rectangle(r) : dirty.union(r);
+		dirty_version = to;
+	    } else {
+		cache_valid = false;
+	    }
+	}
+    }
+
+    /**
+     * Get the sum of the versions of the static objects at the bottom and the
+     * configuration, see {@link common.Renderable#version()}
+     * 
+     * @return Sum of the versions
+     */
+    public long layers_version() {
+	long version = config.version();
+	for (int i = 0; i < renderlist.size() && renderlist.get(i).isStatic(); i++) {
+	    version += renderlist.get(i).version();
+	}
+	return version;
+    }
+
     /**
      * Override the <code>paintComponent(Graphics)</code> method from the parent
-     * JPanel class to customize rendering part
+     * JPanel class to customize rendering part. The static objects at the bottom
+     * are rendered into a cached image, which is reused until their versions or
+     * the version of the configuration change, the other objects are rendered on
+     * top of it every time. If progressive rendering is enabled, a draft of the
+     * static objects is rendered right away, which is cheap, and they are
+     * rendered in full quality in background to replace it. Optional objects are
+     * skipped on drafts and after frames that take longer than the frame rate
+     * allows, see {@link common.Renderable#isOptional()}.
      */
     @Override
     public void paintComponent(Graphics g) {
+	long start = System.nanoTime();
+	frame_start = start;
 	super.paintComponent(g);
-	// Renderable objects rendering
-	for (Renderable o : renderlist) {
-	    o.render(g);
+	prepare();
+	Graphics2D g2d = (Graphics2D) g;
+	// Find the static objects at the bottom, the changes of the configuration
+	// are committed by whoever made them, see BaseConfig.commit()
+	int layers = 0;
+	long version = config.version();
+	while (layers < renderlist.size() && renderlist.get(layers).isStatic()) {
+	    version += renderlist.get(layers).version();
+	    layers++;
+	}
+	// The cache has the resolution of the device, such as HiDPI screens
+	double sx = g2d.getTransform().getScaleX();
+	double sy = g2d.getTransform().getScaleY();
+	int w = (int) Math.ceil(config.width * sx);
+	int h = (int) Math.ceil(config.height * sy);
+	// Drafts because of shedding are rendered again once frames are fast enough
+	boolean full = cache_width != w || cache_height != h || cache_draft && !shedding;
+	cache_width = w;
+	cache_height = h;
+	Rectangle region = null;
+	synchronized (cache_lock) {
+	    full |= !cache_valid;
+	    if (!full && cache_version != version) {
+		// Only the dirty region if it covers all the changes
+		if (dirty != null && dirty_version == version) {
+		    region = dirty;
+		} else {
+		    full = true;
+		}
+	    }
+	    dirty = null;
+	    cache_version = version;
+	    cache_valid = true;
 	}
+	if (full || region != null) {
+	    boolean draft = false;
+	    if (full) {
+		stop_rendering();
+		if (cache == null || cache.getWidth() != w || cache.getHeight() != h) {
+		    cache = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		}
+		// Progressive frames show a draft right away, the frame in full quality
+		// that replaces it is rendered in background
+		cache_draft = shedding && !config.progressive;
+		draft = cache_draft || config.progressive;
+	    }
+	    Graphics2D cg = Rasterizer.createGraphics(cache);
+	    cg.scale(sx, sy);
+	    if (region != null) {
+		cg.clip(region);
+	    } else if (draft) {
+		draft(cg);
+	    }
+	    for (int i = 0; i < layers; i++) {
+		if (!draft || !renderlist.get(i).isOptional()) {
+		    measure(renderlist.get(i), cg, draft);
+		}
+	    }
+	    cg.dispose();
+	    screen_stale = true;
+	    // The region is rendered on the frame as well once it is completed
+	    if (region != null && rendering != null) {
+		changed = changed == null ? new Rectangle(region) : changed.union(region);
+	    }
+	    if (full && config.progressive) {
+		request_frame(layers, w, h, sx, sy);
+	    }
+	}
+	if (cache != null) {
+	    g2d.drawImage(screen(), 0, 0, config.width, config.height, null);
+	} else {
+	    g2d.setColor(config.background_color);
+	    g2d.fillRect(0, 0, config.width, config.height);
+	}
+	// Renderable objects rendering, they are drafts as well until the frame is
+	// completed
+	if (rendering != null) {
+	    draft(g2d);
+	} else {
+	    render_hints(g2d);
+	}
+	for (int i = layers; i < renderlist.size(); i++) {
+	    if (!shedding || !renderlist.get(i).isOptional()) {
+		measure(renderlist.get(i), g2d, false);
+	    }
+	}
+	shedding = System.nanoTime() - start > 1000000000L / Math.max(1, config.frame_rate);
+	if (config.show_stats) {
+	    if (hud == null) {
+		hud = new StatsHud(stats(), config);
+	    }
+	    hud.render(g2d);
+	}
+	if (stats != null) {
+	    stats.frame(start);
+	}
+	if (full && cache_draft) {
+	    repaint();
+	}
+    }
+
+    // Render the static objects in full quality in background. The frame
+    // replaces the draft in the cache on the event dispatch thread, and the
+    // replaced cache is the back buffer of the next frame
+    private void request_frame(int layers, int w, int h, double sx, double sy) {
+	final long current = generation;
+	final List<Renderable> objects = snapshot(renderlist.subList(0, layers));
+	final BufferedImage image = back != null && back.getWidth() == w && back.getHeight() == h ? back
+		: new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+	back = null;
+	rendering = Frames.EXECUTOR.submit(() -> {
+	    if (render_frame(image, objects, sx, sy, current)) {
+		SwingUtilities.invokeLater(() -> swap(current, image, objects, sx, sy));
+	    }
+	});
+    }
+
+    // Get the image of the cache that is drawn on screen, it is copied from the
+    // cache if the cache changed
+    private BufferedImage screen() {
+	if (screen == null || screen.getWidth() != cache.getWidth() || screen.getHeight() != cache.getHeight()) {
+	    screen = new BufferedImage(cache.getWidth(), cache.getHeight(), BufferedImage.TYPE_INT_RGB);
+	    screen_stale = true;
+	}
+	if (screen_stale) {
+	    Graphics2D g = screen.createGraphics();
+	    g.drawImage(cache, 0, 0, null);
+	    g.dispose();
+	    screen_stale = false;
+	}
+	return screen;
+    }
+
+    // Render the static objects on a frame, false if the frame is stale or
+    // cannot be rendered
+    private boolean render_frame(BufferedImage image, List<Renderable> objects, double sx, double sy, long current) {
+	Graphics2D g = Rasterizer.createGraphics(image);
+	try {
+	    g.scale(sx, sy);
+	    for (Renderable r : objects) {
+		// Stop as soon as the frame is stale
+		if (generation != current) {
+		    return false;
+		}
+		measure(r, g, false);
+	    }
+	    return true;
+	} catch (CancellationException e) {
+	    return false;
+	} catch (RuntimeException e) {
+	    // The graph may be changed while it is being rendered, it will be
+	    // rendered again in that case
+	    if (generation == current) {
+		e.printStackTrace();
+		SwingUtilities.invokeLater(() -> {
+		    if (generation == current) {
+			// The cache is not replaced, so it is rendered again in full
+			rendering = null;
+			changed = null;
+			invalidate_layers();
+			repaint();
+		    }
+		});
+	    }
+	    return false;
+	} finally {
+	    g.dispose();
+	}
+    }
+
+    // Replace the cache with a rendered frame unless it is stale, parts of the
+    // cache that were rendered again during the rendering are rendered on it
+    // first. The replaced cache becomes the back buffer
+    private void swap(long current, BufferedImage image, List<Renderable> objects, double sx, double sy) {
+	if (generation != current) {
+	    back = image;
+	    return;
+	}
+	if (changed != null) {
+	    Graphics2D g = Rasterizer.createGraphics(image);
+	    g.scale(sx, sy);
+	    g.clip(changed);
+	    for (Renderable r : objects) {
+		measure(r, g, false);
+	    }
+	    g.dispose();
+	}
+	back = cache;
+	cache = image;
+	screen_stale = true;
+	rendering = null;
+	changed = null;
+	repaint();
+    }
+
+    /**
+     * Get the statistics of the renderable objects, which tell how long they take
+     * to render on screen and how many bytes they allocate. The objects are only
+     * measured after this method is called or <code>show_stats</code> is enabled
+     * in the configuration.
+     * 
+     * @return The statistics
+     */
+    public FrameStats stats() {
+	synchronized (cache_lock) {
+	    if (stats == null) {
+		stats = new FrameStats();
+	    }
+	    return stats;
+	}
+    }
+
+    // Render an object, it is measured if the statistics are asked for and it
+    // is not a draft
+    private void measure(Renderable r, Graphics2D g, boolean draft) {
+	FrameStats s = draft ? null : stats;
+	if (s == null) {
+	    paint(r, g, draft, false);
+	    return;
+	}
+	long bytes = FrameStats.allocated();
+	long start = System.nanoTime();
+	paint(r, g, draft, false);
+	long nanos = System.nanoTime() - start;
+	s.record(source(r), nanos, bytes < 0 ? -1 : FrameStats.allocated() - bytes);
+    }
+
+    // Render an object, it is recorded by Java Flight Recorder if the event is
+    // enabled, see LayerEvent
+    private static void paint(Renderable r, Graphics2D g, boolean draft, boolean export) {
+	LayerEvent event = new LayerEvent();
+	event.begin();
+	r.render(g);
+	if (event.shouldCommit()) {
+	    event.layer = FrameStats.name(source(r));
+	    event.draft = draft;
+	    event.export = export;
+	    event.commit();
+	}
+    }
+
+    // The object that a snapshot is taken from, see View
+    private static Renderable source(Renderable r) {
+	return r instanceof View ? ((View) r).source : r;
+    }
+
+    // Stop rendering the frame, it is either stale or not shown
+    private void stop_rendering() {
+	generation++;
+	if (rendering != null) {
+	    rendering.cancel(true);
+	    rendering = null;
+	}
+	changed = null;
+    }
+
+    // A snapshot of a renderable object, it is measured as the object that it is
+    // taken from
+    private static class View implements Renderable {
+	private final Renderable source, snapshot;
+
+	private View(Renderable source, Renderable snapshot) {
+	    this.source = source;
+	    this.snapshot = snapshot;
+	}
+
+	@Override
+	public void render(Graphics g) {
+	    snapshot.render(g);
+	}
+
+	@Override
+	public boolean isStatic() {
+	    return source.isStatic();
+	}
+
+	@Override
+	public boolean isOptional() {
+	    return source.isOptional();
+	}
+
+	@Override
+	public long version() {
+	    return source.version();
+	}
+    }
+
+    // The threads that render the frames of all panels, they are only created
+    // when any panel renders progressively
+    private static class Frames {
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+		Runtime.getRuntime().availableProcessors(), r -> {
+		    Thread t = new Thread(r, "RenderPanel");
+		    t.setDaemon(true);
+		    return t;
+		});
     }
 
 }
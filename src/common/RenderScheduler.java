@@ -0,0 +1,149 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.Timer;
+
+/**
+ * RenderScheduler paints all {@link common.RenderPanel}s at a limited frame
+ * rate. Repaint requests of the panels, such as the ones from mouse events,
+ * new data and changes of the configuration, are collected and handed to Swing
+ * at most once per frame of each panel, see
+ * {@link common.BaseConfig#frame_rate}, so bursts of requests only produce one
+ * paint.<br>
+ * Tasks that run once per frame, such as checking the versions of the data
+ * that other threads change, are run by the same timer right before the
+ * repaints. Therefore, there is only one timer no matter how many panels are
+ * shown, and it only runs while there are requests or tasks.
+ *
+ * @author Daniel Xu
+ *
+ */
+public final class RenderScheduler {
+
+    /** Frame rate when only tasks are scheduled **/
+    public static final int DEFAULT_FRAME_RATE = 60;
+
+    /** Lock of the requests and tasks, requests may come from any thread **/
+    private static final Object lock = new Object();
+
+    /** Panels that requested repaints **/
+    private static final Set<RenderPanel> requests = new LinkedHashSet<RenderPanel>();
+
+    /** Tasks that run once per frame **/
+    private static final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    /** Timer that runs the frames **/
+    private static final Timer timer = new Timer(1000 / DEFAULT_FRAME_RATE, e -> frame());
+
+    /** Nanoseconds when the timer runs next time if it is running **/
+    private static long next;
+
+    private RenderScheduler() {
+    }
+
+    /**
+     * Request the panel to be repainted in its next frame, see
+     * {@link common.RenderPanel#repaint(long, int, int, int, int)}. It can be
+     * called on any thread.
+     *
+     * @param panel The panel
+     */
+    static void request(RenderPanel panel) {
+	synchronized (lock) {
+	    requests.add(panel);
+	    start(millis(panel.frame_wait(System.nanoTime())));
+	}
+    }
+
+    /**
+     * Add a task that runs on the event dispatch thread once per frame until it
+     * is removed
+     *
+     * @param task The task
+     */
+    public static void add(Runnable task) {
+	synchronized (lock) {
+	    tasks.add(task);
+	    start(1000 / DEFAULT_FRAME_RATE);
+	}
+    }
+
+    /**
+     * Remove a task that was added by {@link #add(Runnable)}
+     *
+     * @param task The task
+     */
+    public static void remove(Runnable task) {
+	synchronized (lock) {
+	    tasks.remove(task);
+	}
+    }
+
+    // Start the timer if it is not running, or run it sooner if it is. Changing
+    // the delay of a running timer only affects the runs after the next one, so
+    // it is restarted to run the next one sooner
+    private static void start(int delay) {
+	long at = System.nanoTime() + delay * 1000000L;
+	if (!timer.isRunning()) {
+	    timer.setInitialDelay(delay);
+	    timer.setDelay(Math.max(1, delay));
+	    timer.start();
+	    next = at;
+	} else if (at < next) {
+	    timer.setInitialDelay(delay);
+	    timer.setDelay(Math.max(1, delay));
+	    timer.restart();
+	    next = at;
+	}
+    }
+
+    // Milliseconds of the timer to wait the given nanoseconds
+    private static int millis(long nanos) {
+	return nanos <= 0 ? 0 : (int) (nanos / 1000000) + 1;
+    }
+
+    // Run the tasks and hand the repaints that are due to Swing, the timer stops
+    // if nothing is left
+    private static void frame() {
+	Runnable[] running;
+	synchronized (lock) {
+	    running = tasks.toArray(new Runnable[tasks.size()]);
+	}
+	// Tasks may request repaints, so they run first
+	for (Runnable task : running) {
+	    task.run();
+	}
+	List<RenderPanel> due = new ArrayList<RenderPanel>();
+	long now = System.nanoTime();
+	synchronized (lock) {
+	    int delay = tasks.isEmpty() ? Integer.MAX_VALUE : 1000 / DEFAULT_FRAME_RATE;
+	    for (Iterator<RenderPanel> i = requests.iterator(); i.hasNext();) {
+		RenderPanel panel = i.next();
+		long wait = panel.frame_wait(now);
+		if (wait <= 0) {
+		    due.add(panel);
+		    i.remove();
+		} else {
+		    delay = Math.min(delay, millis(wait));
+		}
+	    }
+	    if (delay == Integer.MAX_VALUE) {
+		timer.stop();
+	    } else {
+		// The next run was already scheduled with the previous delay
+		timer.setInitialDelay(delay);
+		timer.setDelay(delay);
+		timer.restart();
+		next = now + delay * 1000000L;
+	    }
+	}
+	for (RenderPanel panel : due) {
+	    panel.flush_repaint();
+	}
+    }
+}
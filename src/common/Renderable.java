@@ -5,7 +5,9 @@ import java.awt.Graphics;
 /**
  * Renderable object should implement this interface. Renderable means that an
  * object can be render on the JPanel and the detail of rendering is done by
- * overriding the {@link #render(Graphics)} method.
+ * overriding the {@link #render(Graphics)} method. Objects that are not
+ * changed frequently can be marked as static by {@link #isStatic()}, so that
+ * {@link common.RenderPanel} does not need to render them every time.
  * 
  * @author Daniel Xu
  *
@@ -19,4 +21,51 @@ public interface Renderable {
      */
     public void render(Graphics g);
 
+    /**
+     * Check if the object is static. The output of static objects only depends on
+     * the configuration and their {@link #version()}, so they can be rendered
+     * once and reused until the version changes. Objects that change without
+     * changing the version, such as the cursor, are not static.
+     * 
+     * @return True if the object is static, false by default
+     */
+    public default boolean isStatic() {
+	return false;
+    }
+
+    /**
+     * Check if the object is optional. Optional objects, such as labels, are not
+     * rendered on drafts and when frames take longer than the frame rate allows,
+     * see {@link common.BaseConfig#frame_rate}.
+     * 
+     * @return True if the object is optional, false by default
+     */
+    public default boolean isOptional() {
+	return false;
+    }
+
+    /**
+     * Get the version of the data that the object renders. It should increase
+     * every time the data changes, see {@link #isStatic()}.
+     * 
+     * @return Version of the data, 0 by default
+     */
+    public default long version() {
+	return 0;
+    }
+
+    /**
+     * Get an object that renders the same as this object, but with the given
+     * snapshot of the configuration, see {@link common.BaseConfig#snapshot()}.
+     * It is rendered in background and in tiles while the configuration may be
+     * changed on the event dispatch thread. Objects that do not keep anything
+     * computed from the configuration return themselves.
+     * 
+     * @param config Snapshot of the configuration
+     * @return The object that renders with the snapshot
+     */
+    public default Renderable snapshot(BaseConfig config) {
+	return this;
+    }
+
 }
@@ -0,0 +1,264 @@
+package common;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * SnapshotList is a list that can be modified by producer threads while the
+ * renderer is reading it. Every modification copies the elements into a new
+ * array and publishes it as a whole, so a batch of elements added by
+ * {@link #addAll(Collection)} becomes visible at once. Readers call
+ * {@link #snapshot()} to get an immutable list of the elements at that moment,
+ * reading never takes a lock and never sees a half modified list.<br>
+ * Each modification also increases the {@link #version()} of the list, which
+ * can be used to tell if something that computed from the list is stale. All
+ * the modifications of {@link List} are supported, bulk ones such as
+ * {@link #removeIf(Predicate)} or clearing a {@link #subList(int, int)}, publish
+ * their result once. Iterators iterate the snapshot of the list when they are
+ * created, and {@link Iterator#remove()} removes the element from the list, as
+ * long as the list is not modified by anything else in the meantime.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class SnapshotList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** Current elements, the array is never modified after it is published **/
+    private volatile Object[] elements = new Object[0];
+
+    /** Number of modifications **/
+    private volatile long version;
+
+    /**
+     * Get the elements of the list at this moment, the returned list will not
+     * change and it cannot be modified
+     * 
+     * @return Immutable list of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> snapshot() {
+	return Collections.unmodifiableList(Arrays.asList((E[]) elements));
+    }
+
+    /**
+     * Get the version of the list, it increases every time the list is modified
+     * 
+     * @return Version of the list
+     */
+    public long version() {
+	return version;
+    }
+
+    @Override
+    public synchronized boolean add(E e) {
+	return addAll(Collections.singletonList(e));
+    }
+
+    @Override
+    public synchronized void add(int index, E e) {
+	addAll(index, Collections.singletonList(e));
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends E> c) {
+	return addAll(elements.length, c);
+    }
+
+    @Override
+    public synchronized boolean addAll(int index, Collection<? extends E> c) {
+	Object[] old = elements;
+	if (index < 0 || index > old.length) {
+	    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + old.length);
+	}
+	if (c.isEmpty()) {
+	    return false;
+	}
+	Object[] added = c.toArray();
+	Object[] copy = new Object[old.length + added.length];
+	System.arraycopy(old, 0, copy, 0, index);
+	System.arraycopy(added, 0, copy, index, added.length);
+	System.arraycopy(old, index, copy, index + added.length, old.length - index);
+	publish(copy);
+	return true;
+    }
+
+    @Override
+    public synchronized E set(int index, E e) {
+	E previous = get(index);
+	Object[] copy = elements.clone();
+	copy[index] = e;
+	publish(copy);
+	return previous;
+    }
+
+    @Override
+    public synchronized E remove(int index) {
+	E e = get(index);
+	Object[] old = elements;
+	Object[] copy = new Object[old.length - 1];
+	System.arraycopy(old, 0, copy, 0, index);
+	System.arraycopy(old, index + 1, copy, index, old.length - index - 1);
+	publish(copy);
+	return e;
+    }
+
+    @Override
+    protected synchronized void removeRange(int from, int to) {
+	Object[] old = elements;
+	if (from < 0 || to > old.length || from > to) {
+	    throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + old.length);
+	}
+	if (from == to) {
+	    return;
+	}
+	Object[] copy = new Object[old.length - (to - from)];
+	System.arraycopy(old, 0, copy, 0, from);
+	System.arraycopy(old, to, copy, from, old.length - to);
+	publish(copy);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized boolean removeIf(Predicate<? super E> filter) {
+	Object[] old = elements;
+	Object[] copy = new Object[old.length];
+	int n = 0;
+	for (Object o : old) {
+	    if (!filter.test((E) o)) {
+		copy[n++] = o;
+	    }
+	}
+	if (n == old.length) {
+	    return false;
+	}
+	publish(Arrays.copyOf(copy, n));
+	return true;
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> c) {
+	return removeIf(e -> c.contains(e));
+    }
+
+    @Override
+    public synchronized boolean retainAll(Collection<?> c) {
+	return removeIf(e -> !c.contains(e));
+    }
+
+    @Override
+    public synchronized void clear() {
+	publish(new Object[0]);
+    }
+
+    // Publish the new elements, the version is increased after the elements.
+    // modCount lets the list iterators and sub lists of AbstractList notice the
+    // modifications that are not made through them
+    private void publish(Object[] copy) {
+	elements = copy;
+	version++;
+	modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+	return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+	return elements.length;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+	return new Itr();
+    }
+
+    /**
+     * Get the version of the given list if it is a SnapshotList, otherwise return
+     * 0, since the modifications of other lists cannot be tracked.
+     * 
+     * @param l The list
+     * @return Version of the list, or 0
+     */
+    public static long version(List<?> l) {
+	if (l instanceof SnapshotList) {
+	    return ((SnapshotList<?>) l).version();
+	}
+	return 0;
+    }
+
+    /**
+     * Get the snapshot of the given list if it is a SnapshotList, otherwise
+     * return the list itself. Renderers use it so they can accept any list.
+     * 
+     * @param l The list
+     * @return Snapshot of the list, or the list itself
+     */
+    public static <E> List<E> snapshot(List<E> l) {
+	if (l instanceof SnapshotList) {
+	    return ((SnapshotList<E>) l).snapshot();
+	}
+	return l;
+    }
+
+    /**
+     * Iterator of the elements when it is created, elements that it returned can
+     * be removed from the list
+     */
+    private class Itr implements Iterator<E> {
+	private final Object[] snapshot = elements;
+
+	/** Version of the list that the removals expect **/
+	private long expected = version;
+
+	/** Index of the next element in the snapshot **/
+	private int cursor;
+
+	/** Number of elements that were removed through the iterator **/
+	private int removed;
+
+	/** Index of the last returned element in the list, -1 if there is none **/
+	private int last = -1;
+
+	@Override
+	public boolean hasNext() {
+	    return cursor < snapshot.length;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E next() {
+	    if (cursor >= snapshot.length) {
+		throw new NoSuchElementException();
+	    }
+	    last = cursor - removed;
+	    return (E) snapshot[cursor++];
+	}
+
+	@Override
+	public void remove() {
+	    if (last < 0) {
+		throw new IllegalStateException();
+	    }
+	    synchronized (SnapshotList.this) {
+		if (version != expected) {
+		    throw new ConcurrentModificationException();
+		}
+		SnapshotList.this.remove(last);
+		expected = version;
+	    }
+	    removed++;
+	    last = -1;
+	}
+    }
+}
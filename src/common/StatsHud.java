@@ -0,0 +1,91 @@
+package common;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StatsHud shows the frames per second and the slowest renderable objects of a
+ * {@link common.RenderPanel} on top of the graph, see
+ * {@link common.FrameStats}. It is shown when <code>show_stats</code> is
+ * enabled in the configuration, or it can be added as the last renderable
+ * object.
+ *
+ * @author Daniel Xu
+ *
+ */
+public class StatsHud implements Renderable {
+
+    /** Number of the slowest objects that are shown **/
+    public static final int SHOWN = 3;
+
+    /** Statistics that are shown **/
+    private FrameStats stats;
+
+    /** Configuration of the graph **/
+    private BaseConfig config;
+
+    /** Largest size of the text that has been shown, 0 if nothing is shown **/
+    private int shown_width, shown_height;
+
+    /**
+     * Construct the HUD of the statistics, it is shown at the top right corner of
+     * the graph
+     *
+     * @param stats  The statistics, see {@link common.RenderPanel#stats()}
+     * @param config Configuration of the graph
+     */
+    public StatsHud(FrameStats stats, BaseConfig config) {
+	this.stats = stats;
+	this.config = config;
+    }
+
+    @Override
+    public void render(Graphics g) {
+	List<FrameStats.Layer> layers = new ArrayList<FrameStats.Layer>(stats.layers());
+	layers.sort((a, b) -> Double.compare(b.p95, a.p95));
+	List<String> lines = new ArrayList<String>();
+	lines.add(String.format("%.1f fps", stats.fps()));
+	for (int i = 0; i < layers.size() && i < SHOWN; i++) {
+	    FrameStats.Layer l = layers.get(i);
+	    String line = String.format("%s %.2f / %.2f ms", l.name, l.p50, l.p95);
+	    if (l.allocated >= 0) {
+		line += String.format(" %d KB", l.allocated / 1024);
+	    }
+	    lines.add(line);
+	}
+	FontMetrics fm = g.getFontMetrics();
+	int width = 0;
+	for (String line : lines) {
+	    width = Math.max(width, fm.stringWidth(line));
+	}
+	int height = fm.getHeight() * lines.size();
+	shown_width = Math.max(shown_width, width);
+	shown_height = Math.max(shown_height, height);
+	int x = config.width - width - 12;
+	g.setColor(new Color(0, 0, 0, 160));
+	g.fillRect(x - 4, 4, width + 8, height + 8);
+	g.setColor(Color.WHITE);
+	for (int i = 0; i < lines.size(); i++) {
+	    g.drawString(lines.get(i), x, 8 + fm.getAscent() + i * fm.getHeight());
+	}
+    }
+
+    /**
+     * Get the region that the HUD is shown in, it should be repainted together
+     * with every other region, since the statistics change every frame. It is as
+     * large as the largest text that has been shown, so a wider text is not cut
+     * off by the region.
+     *
+     * @return The region in pixels, null if the HUD has not been shown
+     */
+    public Rectangle bounds() {
+	if (shown_width == 0) {
+	    return null;
+	}
+	return new Rectangle(config.width - shown_width - 16, 4, shown_width + 8, shown_height + 8);
+    }
+}
@@ -0,0 +1,1219 @@
+package common;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RectangularShape;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.AttributedCharacterIterator;
+import java.util.Base64;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * SvgGraphics is a Graphics2D that writes everything rendered on it to a
+ * stream as svg, so graphs can be exported as vector images by rendering them
+ * on it, see {@link common.AbstractGraphTool#write_svg(OutputStream)}. Nothing
+ * is rasterized except images that are drawn, and the svg is written while
+ * rendering, it is not kept in memory.<br>
+ *
+ * Shapes are written in pixels of the image. Consecutive shapes that have the
+ * same style are merged into one path, and lines are simplified so that points
+ * closer than the tolerance to the line are dropped, therefore, a curve of a
+ * million points does not become a million path commands. Only opaque shapes
+ * are merged, since overlapping parts of a path are painted once. Paints other
+ * than colors are written as the current color.
+ *
+ * <pre>
+ * {@code
+ * SvgGraphics g = new SvgGraphics(out, 600, 600, 0.25);
+ * render(g);
+ * g.finish();
+ * }
+ * </pre>
+ *
+ * @author Daniel Xu
+ *
+ */
+public class SvgGraphics extends Graphics2D {
+
+    /** The svg that is being written, shared with the created graphics **/
+    private Document doc;
+
+    /** Transform from the user space to pixels **/
+    private AffineTransform transform = new AffineTransform();
+
+    /** Clip in pixels, null if there is no clip **/
+    private Shape clip;
+
+    /** Id of the clip in the svg, 0 if it is not written yet **/
+    private int clip_id;
+
+    private Color color = Color.BLACK;
+    private Paint paint = Color.BLACK;
+    private Color background = Color.WHITE;
+    private Stroke stroke = new BasicStroke();
+    private Composite composite = AlphaComposite.SrcOver;
+    private Font font = new Font(Font.DIALOG, Font.PLAIN, 12);
+    private RenderingHints hints = new RenderingHints(null);
+
+    /** Attributes of the filled and stroked paths, null if they are changed **/
+    private String fill_style, stroke_style;
+
+    /**
+     * Start writing a svg of the given size to the stream
+     *
+     * @param out       The stream that the svg is written to, it is not closed
+     * @param width     Width of the svg
+     * @param height    Height of the svg
+     * @param tolerance Max distance in pixels of the points that are dropped
+     *                  from lines, 0 to keep every point
+     */
+    public SvgGraphics(OutputStream out, int width, int height, double tolerance) {
+	doc = new Document(out, width, height, tolerance);
+    }
+
+    private SvgGraphics(SvgGraphics g) {
+	doc = g.doc;
+	transform = new AffineTransform(g.transform);
+	clip = g.clip;
+	clip_id = g.clip_id;
+	color = g.color;
+	paint = g.paint;
+	background = g.background;
+	stroke = g.stroke;
+	composite = g.composite;
+	font = g.font;
+	hints = (RenderingHints) g.hints.clone();
+	fill_style = g.fill_style;
+	stroke_style = g.stroke_style;
+    }
+
+    /**
+     * Finish the svg and flush it to the stream. Errors of the stream are kept
+     * while rendering, since Graphics cannot throw them, and they are thrown
+     * here.
+     *
+     * @throws IOException If the svg cannot be written
+     */
+    public void finish() throws IOException {
+	doc.finish();
+    }
+
+    @Override
+    public Graphics create() {
+	return new SvgGraphics(this);
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    // Shapes
+
+    @Override
+    public void draw(Shape s) {
+	if (!(stroke instanceof BasicStroke)) {
+	    // Other strokes can only be written as their outlines
+	    fill(stroke.createStrokedShape(s));
+	    return;
+	}
+	double pad = ((BasicStroke) stroke).getLineWidth() * scale();
+	if (!visible(s, pad)) {
+	    return;
+	}
+	if (stroke_style == null) {
+	    stroke_style = stroke_style();
+	}
+	doc.begin(stroke_style, opaque());
+	doc.path(s.getPathIterator(transform));
+    }
+
+    @Override
+    public void fill(Shape s) {
+	if (!visible(s, 0)) {
+	    return;
+	}
+	if (fill_style == null) {
+	    fill_style = fill_style();
+	}
+	PathIterator it = s.getPathIterator(transform);
+	// Simple shapes have the same winding, so they can be merged without
+	// cutting holes in each other
+	boolean simple = s instanceof RectangularShape && !(s instanceof Arc2D);
+	if (simple) {
+	    doc.begin(fill_style, opaque());
+	} else {
+	    doc.begin(it.getWindingRule() == PathIterator.WIND_EVEN_ODD ? fill_style + " fill-rule=\"evenodd\""
+		    : fill_style, false);
+	}
+	doc.path(it);
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+	if (onStroke) {
+	    s = stroke.createStrokedShape(s);
+	}
+	s = transform.createTransformedShape(s);
+	if (clip != null) {
+	    Area a = new Area(s);
+	    a.intersect(new Area(clip));
+	    s = a;
+	}
+	return s.intersects(rect);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+	draw(new Line2D.Float(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+	if (width >= 0 && height >= 0) {
+	    draw(new Rectangle(x, y, width, height));
+	}
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+	fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+	Color c = color;
+	Paint p = paint;
+	Composite comp = composite;
+	setPaint(background);
+	setComposite(AlphaComposite.Src);
+	fillRect(x, y, width, height);
+	setPaint(p);
+	setComposite(comp);
+	color = c;
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+	draw(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+	fill(new RoundRectangle2D.Float(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+	draw(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+	fill(new Ellipse2D.Float(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+	draw(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+	fill(new Arc2D.Float(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+	if (nPoints > 0) {
+	    draw(polygon(xPoints, yPoints, nPoints, false));
+	}
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+	if (nPoints > 0) {
+	    draw(polygon(xPoints, yPoints, nPoints, true));
+	}
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+	if (nPoints > 0) {
+	    fill(polygon(xPoints, yPoints, nPoints, true));
+	}
+    }
+
+    private static Path2D polygon(int[] xs, int[] ys, int n, boolean close) {
+	Path2D path = new Path2D.Float(Path2D.WIND_EVEN_ODD, n);
+	path.moveTo(xs[0], ys[0]);
+	for (int i = 1; i < n; i++) {
+	    path.lineTo(xs[i], ys[i]);
+	}
+	if (close) {
+	    path.closePath();
+	}
+	return path;
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+	// Nothing can be copied from a svg that is already written
+    }
+
+    // Texts
+
+    @Override
+    public void drawString(String str, int x, int y) {
+	drawString(str, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(String str, float x, float y) {
+	if (str == null) {
+	    throw new NullPointerException("String cannot be null");
+	}
+	if (str.isEmpty()) {
+	    return;
+	}
+	StringBuilder sb = new StringBuilder("<text");
+	if (transform.getType() == AffineTransform.TYPE_IDENTITY
+		|| transform.getType() == AffineTransform.TYPE_TRANSLATION) {
+	    attr(sb, "x", x + transform.getTranslateX());
+	    attr(sb, "y", y + transform.getTranslateY());
+	} else {
+	    attr(sb, "x", x);
+	    attr(sb, "y", y);
+	    matrix(sb, transform);
+	}
+	sb.append(" font-family=\"").append(family(font)).append('"');
+	attr(sb, "font-size", font.getSize2D());
+	if (font.isBold()) {
+	    sb.append(" font-weight=\"bold\"");
+	}
+	if (font.isItalic()) {
+	    sb.append(" font-style=\"italic\"");
+	}
+	paint(sb, "fill");
+	clip(sb);
+	sb.append('>');
+	escape(sb, str);
+	sb.append("</text>\n");
+	doc.element(sb);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+	drawString(iterator, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+	// Attributes are not kept, the text is written with the current font
+	StringBuilder sb = new StringBuilder();
+	for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+	    sb.append(c);
+	}
+	drawString(sb.toString(), x, y);
+    }
+
+    @Override
+    public void drawGlyphVector(GlyphVector g, float x, float y) {
+	fill(g.getOutline(x, y));
+    }
+
+    // Images
+
+    @Override
+    public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+	AffineTransform t = transform;
+	transform = new AffineTransform(t);
+	if (xform != null) {
+	    transform.concatenate(xform);
+	}
+	boolean drawn = drawImage(img, 0, 0, obs);
+	transform = t;
+	return drawn;
+    }
+
+    @Override
+    public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+	drawImage(op == null ? img : op.filter(img, null), x, y, null);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+	BufferedImage b;
+	if (img instanceof BufferedImage) {
+	    b = (BufferedImage) img;
+	} else {
+	    b = new BufferedImage(img.getColorModel(), img.copyData(null),
+		    img.getColorModel().isAlphaPremultiplied(), null);
+	}
+	drawImage(b, xform, null);
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage img, AffineTransform xform) {
+	drawRenderedImage(img.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+	return drawImage(img, x, y, img.getWidth(observer), img.getHeight(observer), null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+	return drawImage(img, x, y, img.getWidth(observer), img.getHeight(observer), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+	return drawImage(img, x, y, width, height, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+	    ImageObserver observer) {
+	return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, null, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+	    Color bgcolor, ImageObserver observer) {
+	BufferedImage b = buffered(img, observer);
+	if (b == null) {
+	    return false;
+	}
+	// Flipped images are written unflipped
+	int x = Math.max(0, Math.min(sx1, sx2)), y = Math.max(0, Math.min(sy1, sy2));
+	int w = Math.min(b.getWidth(), Math.max(sx1, sx2)) - x, h = Math.min(b.getHeight(), Math.max(sy1, sy2)) - y;
+	if (w <= 0 || h <= 0) {
+	    return true;
+	}
+	return drawImage(b.getSubimage(x, y, w, h), Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1),
+		Math.abs(dy2 - dy1), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor,
+	    ImageObserver observer) {
+	BufferedImage b = buffered(img, observer);
+	if (b == null) {
+	    return false;
+	}
+	if (width <= 0 || height <= 0 || !visible(new Rectangle(x, y, width, height), 0)) {
+	    return true;
+	}
+	if (bgcolor != null) {
+	    Paint p = paint;
+	    setPaint(bgcolor);
+	    fillRect(x, y, width, height);
+	    setPaint(p);
+	}
+	StringBuilder sb = new StringBuilder("<image");
+	attr(sb, "x", x);
+	attr(sb, "y", y);
+	attr(sb, "width", width);
+	attr(sb, "height", height);
+	if (transform.getType() != AffineTransform.TYPE_IDENTITY) {
+	    matrix(sb, transform);
+	}
+	float alpha = alpha();
+	if (alpha < 1) {
+	    attr(sb, "opacity", alpha);
+	}
+	clip(sb);
+	sb.append(" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,");
+	doc.image(sb, b);
+	return true;
+    }
+
+    // Convert the image to a BufferedImage, null if it is not loaded
+    private static BufferedImage buffered(Image img, ImageObserver observer) {
+	if (img instanceof BufferedImage) {
+	    return (BufferedImage) img;
+	}
+	int w = img.getWidth(observer), h = img.getHeight(observer);
+	if (w < 0 || h < 0) {
+	    return null;
+	}
+	BufferedImage b = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+	Graphics2D g = b.createGraphics();
+	boolean drawn = g.drawImage(img, 0, 0, observer);
+	g.dispose();
+	return drawn ? b : null;
+    }
+
+    // States
+
+    @Override
+    public Color getColor() {
+	return color;
+    }
+
+    @Override
+    public void setColor(Color c) {
+	if (c != null) {
+	    color = c;
+	    setPaint(c);
+	}
+    }
+
+    @Override
+    public Paint getPaint() {
+	return paint;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+	if (paint != null) {
+	    this.paint = paint;
+	    if (paint instanceof Color) {
+		color = (Color) paint;
+	    }
+	    fill_style = stroke_style = null;
+	}
+    }
+
+    @Override
+    public void setPaintMode() {
+	setComposite(AlphaComposite.SrcOver);
+    }
+
+    @Override
+    public void setXORMode(Color c1) {
+	// Xor cannot be written in svg, shapes are painted over
+    }
+
+    @Override
+    public Color getBackground() {
+	return background;
+    }
+
+    @Override
+    public void setBackground(Color color) {
+	background = color;
+    }
+
+    @Override
+    public Stroke getStroke() {
+	return stroke;
+    }
+
+    @Override
+    public void setStroke(Stroke s) {
+	stroke = s;
+	stroke_style = null;
+    }
+
+    @Override
+    public Composite getComposite() {
+	return composite;
+    }
+
+    @Override
+    public void setComposite(Composite comp) {
+	composite = comp;
+	fill_style = stroke_style = null;
+    }
+
+    @Override
+    public Font getFont() {
+	return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+	if (font != null) {
+	    this.font = font;
+	}
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font f) {
+	return doc.metrics.getFontMetrics(f);
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+	return doc.metrics.getFontRenderContext();
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+	return doc.metrics.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) {
+	hints.put(hintKey, hintValue);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key hintKey) {
+	return hints.get(hintKey);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+	this.hints = new RenderingHints(null);
+	this.hints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+	this.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+	return (RenderingHints) hints.clone();
+    }
+
+    // Transform
+
+    @Override
+    public void translate(int x, int y) {
+	translate((double) x, (double) y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+	transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+	transform.rotate(theta);
+	stroke_style = null;
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+	transform.rotate(theta, x, y);
+	stroke_style = null;
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+	transform.scale(sx, sy);
+	stroke_style = null;
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+	transform.shear(shx, shy);
+	stroke_style = null;
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+	transform.concatenate(tx);
+	stroke_style = null;
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+	transform = new AffineTransform(tx);
+	stroke_style = null;
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+	return new AffineTransform(transform);
+    }
+
+    // Clip
+
+    @Override
+    public Shape getClip() {
+	if (clip == null) {
+	    return null;
+	}
+	try {
+	    return transform.createInverse().createTransformedShape(clip);
+	} catch (NoninvertibleTransformException e) {
+	    return null;
+	}
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+	Shape s = getClip();
+	return s == null ? null : s.getBounds();
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+	clip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+	setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void setClip(Shape s) {
+	clip = s == null ? null : transform.createTransformedShape(s);
+	clip_changed();
+    }
+
+    @Override
+    public void clip(Shape s) {
+	if (s == null) {
+	    clip = null;
+	} else if (clip == null) {
+	    clip = transform.createTransformedShape(s);
+	} else {
+	    Shape t = transform.createTransformedShape(s);
+	    if (clip instanceof Rectangle2D && t instanceof Rectangle2D) {
+		clip = ((Rectangle2D) clip).createIntersection((Rectangle2D) t);
+	    } else {
+		Area a = new Area(clip);
+		a.intersect(new Area(t));
+		clip = a;
+	    }
+	}
+	clip_changed();
+    }
+
+    private void clip_changed() {
+	clip_id = 0;
+	fill_style = stroke_style = null;
+    }
+
+    // Styles
+
+    // Whether the shape is in the clip and the svg, shapes outside are not
+    // written
+    private boolean visible(Shape s, double pad) {
+	Rectangle2D r = transform.createTransformedShape(s.getBounds2D()).getBounds2D();
+	r.setRect(r.getX() - pad, r.getY() - pad, r.getWidth() + pad * 2, r.getHeight() + pad * 2);
+	return r.intersects(0, 0, doc.width, doc.height) && (clip == null || clip.intersects(r));
+    }
+
+    // Scale of the transform, the width of strokes are scaled with it
+    private double scale() {
+	return Math.sqrt(Math.abs(transform.getDeterminant()));
+    }
+
+    private float alpha() {
+	if (composite instanceof AlphaComposite) {
+	    return ((AlphaComposite) composite).getAlpha();
+	}
+	return 1;
+    }
+
+    private boolean opaque() {
+	return color.getAlpha() == 255 && alpha() == 1;
+    }
+
+    private String fill_style() {
+	StringBuilder sb = new StringBuilder();
+	paint(sb, "fill");
+	clip(sb);
+	return sb.toString();
+    }
+
+    private String stroke_style() {
+	BasicStroke bs = (BasicStroke) stroke;
+	double scale = scale();
+	StringBuilder sb = new StringBuilder(" fill=\"none\"");
+	paint(sb, "stroke");
+	// Lines of 0 width are the thinnest lines that can be drawn
+	attr(sb, "stroke-width", bs.getLineWidth() == 0 ? 1 : bs.getLineWidth() * scale);
+	if (bs.getEndCap() == BasicStroke.CAP_ROUND) {
+	    sb.append(" stroke-linecap=\"round\"");
+	} else if (bs.getEndCap() == BasicStroke.CAP_SQUARE) {
+	    sb.append(" stroke-linecap=\"square\"");
+	}
+	if (bs.getLineJoin() == BasicStroke.JOIN_ROUND) {
+	    sb.append(" stroke-linejoin=\"round\"");
+	} else if (bs.getLineJoin() == BasicStroke.JOIN_BEVEL) {
+	    sb.append(" stroke-linejoin=\"bevel\"");
+	} else if (bs.getMiterLimit() != 4) {
+	    attr(sb, "stroke-miterlimit", bs.getMiterLimit());
+	}
+	float[] dash = bs.getDashArray();
+	if (dash != null) {
+	    sb.append(" stroke-dasharray=\"");
+	    for (int i = 0; i < dash.length; i++) {
+		sb.append(i == 0 ? "" : " ").append(Document.format(dash[i] * scale));
+	    }
+	    sb.append('"');
+	    if (bs.getDashPhase() != 0) {
+		attr(sb, "stroke-dashoffset", bs.getDashPhase() * scale);
+	    }
+	}
+	clip(sb);
+	return sb.toString();
+    }
+
+    private void paint(StringBuilder sb, String name) {
+	sb.append(' ').append(name).append("=\"#");
+	String hex = Integer.toHexString(color.getRGB() & 0xffffff);
+	for (int i = hex.length(); i < 6; i++) {
+	    sb.append('0');
+	}
+	sb.append(hex).append('"');
+	float opacity = color.getAlpha() / 255f * alpha();
+	if (opacity < 1) {
+	    attr(sb, name + "-opacity", opacity);
+	}
+    }
+
+    // Append the clip of the element, the clip is written to the svg when it is
+    // first used
+    private void clip(StringBuilder sb) {
+	if (clip != null) {
+	    if (clip_id == 0) {
+		clip_id = doc.clip(clip);
+	    }
+	    sb.append(" clip-path=\"url(#c").append(clip_id).append(")\"");
+	}
+    }
+
+    private static void attr(StringBuilder sb, String name, double value) {
+	sb.append(' ').append(name).append("=\"").append(Document.format(value)).append('"');
+    }
+
+    private static void matrix(StringBuilder sb, AffineTransform t) {
+	sb.append(" transform=\"matrix(").append(Document.format(t.getScaleX())).append(' ')
+		.append(Document.format(t.getShearY())).append(' ').append(Document.format(t.getShearX())).append(' ')
+		.append(Document.format(t.getScaleY())).append(' ').append(Document.format(t.getTranslateX()))
+		.append(' ').append(Document.format(t.getTranslateY())).append(")\"");
+    }
+
+    private static String family(Font f) {
+	switch (f.getFamily()) {
+	case Font.DIALOG:
+	case Font.SANS_SERIF:
+	    return "sans-serif";
+	case Font.SERIF:
+	    return "serif";
+	case Font.DIALOG_INPUT:
+	case Font.MONOSPACED:
+	    return "monospace";
+	default:
+	    StringBuilder sb = new StringBuilder();
+	    escape(sb, f.getFamily());
+	    return sb.toString();
+	}
+    }
+
+    private static void escape(StringBuilder sb, String s) {
+	for (int i = 0; i < s.length(); i++) {
+	    char c = s.charAt(i);
+	    switch (c) {
+	    case '<':
+		sb.append("&lt;");
+		break;
+	    case '>':
+		sb.append("&gt;");
+		break;
+	    case '&':
+		sb.append("&amp;");
+		break;
+	    case '"':
+		sb.append("&quot;");
+		break;
+	    default:
+		sb.append(c);
+	    }
+	}
+    }
+
+    /**
+     * The svg that is being written. Paths are written while they are given, the
+     * current path is only closed when a shape of another style is given.
+     */
+    private static class Document {
+
+	/** The stream of the svg, images are encoded to it directly **/
+	private OutputStream out;
+	private Writer writer;
+
+	/** The first error of the stream, later writes are skipped **/
+	private IOException error;
+
+	/** Size of the svg **/
+	private int width, height;
+
+	/** Points closer than it to the lines are dropped **/
+	private double tolerance;
+
+	/** Graphics that measures fonts **/
+	private Graphics2D metrics;
+
+	/** Number of the clips that are written **/
+	private int clips;
+
+	/** Style of the current path, null if there is no path **/
+	private String style;
+
+	/** Whether shapes of the same style can be merged into the current path **/
+	private boolean merge;
+
+	/** The last command in the current path **/
+	private char command;
+
+	/** Start of the current sub path, and the last point that is written **/
+	private double start_x, start_y, last_x, last_y;
+
+	/**
+	 * The point that is not written yet, it is dropped if the next point is on
+	 * the same line
+	 **/
+	private double pending_x, pending_y;
+	private boolean pending;
+
+	/**
+	 * Directions from the last point that the dropped points allow, relative to
+	 * the direction of the first one that is far enough
+	 **/
+	private double base, low, high, distance;
+	private boolean cone;
+
+	private final char[] digits = new char[32];
+
+	private Document(OutputStream out, int width, int height, double tolerance) {
+	    // Images are written to the stream between texts, so it is not closed
+	    this.out = new FilterOutputStream(out) {
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+		    this.out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+		    flush();
+		}
+	    };
+	    this.writer = new BufferedWriter(new OutputStreamWriter(this.out, StandardCharsets.UTF_8), 64 * 1024);
+	    this.width = width;
+	    this.height = height;
+	    this.tolerance = tolerance;
+	    this.metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+	    write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\""
+		    + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" width=\"" + width + "\" height=\"" + height
+		    + "\" viewBox=\"0 0 " + width + " " + height + "\" xml:space=\"preserve\">\n");
+	}
+
+	private void finish() throws IOException {
+	    end();
+	    write("</svg>\n");
+	    if (error == null) {
+		try {
+		    writer.flush();
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	    metrics.dispose();
+	    if (error != null) {
+		throw error;
+	    }
+	}
+
+	// Continue the current path if it has the style and can be merged,
+	// otherwise start a new one
+	private void begin(String style, boolean merge) {
+	    if (this.merge && merge && style.equals(this.style)) {
+		return;
+	    }
+	    end();
+	    write("<path");
+	    write(style);
+	    write(" d=\"");
+	    this.style = style;
+	    this.merge = merge;
+	}
+
+	// End the current path
+	private void end() {
+	    if (style != null) {
+		flush_pending();
+		write("\"/>\n");
+		style = null;
+		command = 0;
+	    }
+	}
+
+	private void element(CharSequence s) {
+	    end();
+	    write(s.toString());
+	}
+
+	private int clip(Shape s) {
+	    end();
+	    clips++;
+	    write("<clipPath id=\"c" + clips + "\"><path d=\"");
+	    path(s.getPathIterator(null));
+	    flush_pending();
+	    write("\"/></clipPath>\n");
+	    command = 0;
+	    return clips;
+	}
+
+	private void image(StringBuilder sb, BufferedImage img) {
+	    end();
+	    write(sb.toString());
+	    if (error == null) {
+		try {
+		    writer.flush();
+		    OutputStream base64 = Base64.getEncoder().wrap(out);
+		    ImageIO.write(img, "png", base64);
+		    // Only pads the base64, the stream is not closed
+		    base64.close();
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	    write("\"/>\n");
+	}
+
+	// Write the path in pixels
+	private void path(PathIterator it) {
+	    double[] c = new double[6];
+	    for (; !it.isDone(); it.next()) {
+		switch (it.currentSegment(c)) {
+		case PathIterator.SEG_MOVETO:
+		    flush_pending();
+		    command('M');
+		    point(c[0], c[1]);
+		    start_x = last_x = c[0];
+		    start_y = last_y = c[1];
+		    break;
+		case PathIterator.SEG_LINETO:
+		    line(c[0], c[1]);
+		    break;
+		case PathIterator.SEG_QUADTO:
+		    flush_pending();
+		    command('Q');
+		    point(c[0], c[1]);
+		    write(' ');
+		    point(c[2], c[3]);
+		    last_x = c[2];
+		    last_y = c[3];
+		    break;
+		case PathIterator.SEG_CUBICTO:
+		    flush_pending();
+		    command('C');
+		    point(c[0], c[1]);
+		    write(' ');
+		    point(c[2], c[3]);
+		    write(' ');
+		    point(c[4], c[5]);
+		    last_x = c[4];
+		    last_y = c[5];
+		    break;
+		case PathIterator.SEG_CLOSE:
+		    // The line back to the start is not needed
+		    if (pending && pending_x == start_x && pending_y == start_y) {
+			pending = false;
+		    }
+		    flush_pending();
+		    command('Z');
+		    last_x = start_x;
+		    last_y = start_y;
+		    break;
+		}
+	    }
+	}
+
+	// Add a line to the point. Points are dropped while all of them are within
+	// the tolerance of one line from the last written point: each one narrows
+	// the directions that the line can go, and the last point that fits is
+	// written when the next one does not
+	private void line(double x, double y) {
+	    if (tolerance <= 0) {
+		line_to(x, y);
+		return;
+	    }
+	    double dx = x - last_x, dy = y - last_y;
+	    double d = Math.sqrt(dx * dx + dy * dy);
+	    if (pending && cone) {
+		double a = Math.atan2(dy, dx) - base;
+		if (a > Math.PI) {
+		    a -= 2 * Math.PI;
+		} else if (a <= -Math.PI) {
+		    a += 2 * Math.PI;
+		}
+		// The line cannot turn back, otherwise the dropped points are not on it
+		if (d >= distance && a >= low && a <= high) {
+		    double h = Math.asin(tolerance / d);
+		    low = Math.max(low, a - h);
+		    high = Math.min(high, a + h);
+		    pending_x = x;
+		    pending_y = y;
+		    distance = d;
+		    return;
+		}
+		flush_pending();
+		dx = x - last_x;
+		dy = y - last_y;
+		d = Math.sqrt(dx * dx + dy * dy);
+	    }
+	    // Points that are close to the last point are dropped anyway
+	    pending_x = x;
+	    pending_y = y;
+	    pending = true;
+	    if (d > tolerance) {
+		double h = Math.asin(tolerance / d);
+		base = Math.atan2(dy, dx);
+		low = -h;
+		high = h;
+		distance = d;
+		cone = true;
+	    }
+	}
+
+	// Write the point that is not written yet
+	private void flush_pending() {
+	    if (pending) {
+		line_to(pending_x, pending_y);
+		pending = false;
+	    }
+	    cone = false;
+	}
+
+	// Write a line to the point, horizontal and vertical lines only need one
+	// number
+	private void line_to(double x, double y) {
+	    if (Math.round(y * 100) == Math.round(last_y * 100)) {
+		command('H');
+		number(x);
+	    } else if (Math.round(x * 100) == Math.round(last_x * 100)) {
+		command('V');
+		number(y);
+	    } else {
+		command('L');
+		point(x, y);
+	    }
+	    last_x = x;
+	    last_y = y;
+	}
+
+	// Write the command if it is not the same as the last one
+	private void command(char c) {
+	    if (c != command || c == 'M' || c == 'Z') {
+		write(c);
+		command = c == 'M' ? 'L' : c;
+	    } else {
+		write(' ');
+	    }
+	}
+
+	// Write the point with two decimals
+	private void point(double x, double y) {
+	    number(x);
+	    write(' ');
+	    number(y);
+	}
+
+	private void number(double v) {
+	    int i = digits(v, digits);
+	    if (error == null) {
+		try {
+		    writer.write(digits, i, digits.length - i);
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	}
+
+	// Format the number with two decimals
+	private static String format(double v) {
+	    char[] buf = new char[32];
+	    int i = digits(v, buf);
+	    return new String(buf, i, buf.length - i);
+	}
+
+	// Put the digits of the number with two decimals at the end of the buffer,
+	// trailing zeros are omitted, and return where they start
+	private static int digits(double v, char[] buf) {
+	    long n = Math.round(v * 100);
+	    int i = buf.length;
+	    boolean negative = n < 0;
+	    n = Math.abs(n);
+	    int decimals = (int) (n % 100);
+	    n /= 100;
+	    if (decimals != 0) {
+		if (decimals % 10 != 0) {
+		    buf[--i] = (char) ('0' + decimals % 10);
+		}
+		buf[--i] = (char) ('0' + decimals / 10);
+		buf[--i] = '.';
+	    }
+	    do {
+		buf[--i] = (char) ('0' + n % 10);
+		n /= 10;
+	    } while (n != 0);
+	    if (negative) {
+		buf[--i] = '-';
+	    }
+	    return i;
+	}
+
+	private void write(char c) {
+	    if (error == null) {
+		try {
+		    writer.write(c);
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	}
+
+	private void write(String s) {
+	    if (error == null) {
+		try {
+		    writer.write(s);
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,53 @@
+package common.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * ConvertEvent is recorded by Java Flight Recorder when a graph is read from or
+ * written to a formatted file, see {@link common.Convertible}. It is disabled by
+ * default, see {@link common.events.SampleEvent}.
+ * 
+ * @author Daniel Xu
+ *
+ */
+@Name("jplot.Convert")
+@Label("Convert")
+@Category({ "JPlot", "I/O" })
+@Description("Reading or writing of a formatted file")
+@Enabled(false)
+@StackTrace(false)
+public class ConvertEvent extends Event {
+
+    @Label("Operation")
+    @Description("read or out")
+    public String operation;
+
+    @Label("File")
+    public String file;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Records")
+    @Description("Number of functions and points")
+    public int records;
+
+    /**
+     * Construct the event of reading or writing a file
+     * 
+     * @param operation read or out, see {@link common.Convertible}
+     * @param file      The file
+     */
+    public ConvertEvent(String operation, String file) {
+	this.operation = operation;
+	this.file = file;
+    }
+}
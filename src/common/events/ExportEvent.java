@@ -0,0 +1,67 @@
+package common.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * ExportEvent is recorded by Java Flight Recorder when a graph is rendered on an
+ * image or the image is encoded, see {@link common.AbstractGraphTool}. Large
+ * png images are rendered and encoded in strips, and each strip is recorded. It
+ * is disabled by default, see {@link common.events.SampleEvent}.
+ * 
+ * @author Daniel Xu
+ *
+ */
+@Name("jplot.Export")
+@Label("Export")
+@Category({ "JPlot", "Export" })
+@Description("Rendering or encoding of an exported image")
+@Enabled(false)
+@StackTrace(false)
+public class ExportEvent extends Event {
+
+    /** The graph is rendered on an image **/
+    public static final String RENDER = "render";
+
+    /** The image is encoded **/
+    public static final String ENCODE = "encode";
+
+    @Label("Phase")
+    @Description("render or encode, svg images are rendered while they are encoded, which is recorded as encode")
+    public String phase;
+
+    @Label("Format")
+    public String format;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Bytes")
+    @Description("Size of the encoded file, 0 if it is unknown")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Construct the event of a phase of exporting an image
+     * 
+     * @param phase  {@link #RENDER} or {@link #ENCODE}
+     * @param format The image type, such as png
+     * @param width  Width of the image
+     * @param height Height of the image
+     */
+    public ExportEvent(String phase, String format, int width, int height) {
+	this.phase = phase;
+	this.format = format;
+	this.width = width;
+	this.height = height;
+    }
+}
@@ -0,0 +1,39 @@
+package common.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * LayerEvent is recorded by Java Flight Recorder every time a renderable object
+ * is painted, on screen or when the graph is exported, see
+ * {@link common.RenderPanel}. It is disabled by default, see
+ * {@link common.events.SampleEvent}.
+ * 
+ * @author Daniel Xu
+ *
+ */
+@Name("jplot.Layer")
+@Label("Layer Paint")
+@Category({ "JPlot", "Rendering" })
+@Description("Painting of a renderable object")
+@Enabled(false)
+@StackTrace(false)
+public class LayerEvent extends Event {
+
+    @Label("Layer")
+    @Description("Class of the renderable object")
+    public String layer;
+
+    @Label("Draft")
+    @Description("True if it is painted on a draft")
+    public boolean draft;
+
+    @Label("Export")
+    @Description("True if it is painted to export the graph")
+    public boolean export;
+}
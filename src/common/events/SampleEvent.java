@@ -0,0 +1,47 @@
+package common.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * SampleEvent is recorded by Java Flight Recorder every time an expression is
+ * evaluated over a range, see
+ * {@link grapher.util.Expression#sample(int, int, int)}. Like the other events
+ * of JPlot, it is disabled by default and costs nearly nothing unless it is
+ * enabled in a recording, such as <code>recording.enable("jplot.Sample")</code>.
+ * 
+ * @author Daniel Xu
+ *
+ */
+@Name("jplot.Sample")
+@Label("Expression Sampling")
+@Category({ "JPlot", "Data" })
+@Description("Evaluation of an expression over a range")
+@Enabled(false)
+@StackTrace(false)
+public class SampleEvent extends Event {
+
+    @Label("Expression")
+    public String expression;
+
+    @Label("Min")
+    public int min;
+
+    @Label("Max")
+    public int max;
+
+    @Label("Density")
+    public int density;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Invalid Samples")
+    @Description("Samples that cannot be evaluated, such as 1/x when x=0")
+    public int invalid;
+}
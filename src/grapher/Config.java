@@ -37,6 +37,13 @@ public class Config extends BaseConfig {
      **/
     public int density = 10;
 
+    /**
+     * The density of the points in drafts, which are shown while the graph is
+     * rendered again with the full density, see
+     * {@link common.BaseConfig#progressive}
+     **/
+    public int draft_density = 2;
+
     /** Default size of points on graph **/
     public int point_size = 4;
 
@@ -86,6 +93,21 @@ public class Config extends BaseConfig {
      **/
     public boolean show_numbers = false;
 
+    /**
+     * Aggregate points into pixels instead of drawing them one by one, the more
+     * points in a pixel, the more opaque the pixel will be. The size of the points
+     * is ignored. It is recommended when there are far more points than pixels.
+     * Points are not linked in this mode
+     **/
+    public boolean aggregate_points = false;
+
+    /**
+     * Use histogram equalization to shade the aggregated points, if this is false,
+     * use logarithm instead. aggregate_points need to be enabled first in order to
+     * apply this configuration
+     **/
+    public boolean aggregate_eqhist = false;
+
     /** Not linking points on the graph by default, can be modified **/
     public boolean link_points = false;
 
@@ -96,6 +118,21 @@ public class Config extends BaseConfig {
      **/
     public boolean show_cursorxy = false;
 
+    /**
+     * The cursor will snap to the closest point within this distance(in pixels),
+     * and the location of the point will be shown instead of the cursor location.
+     * 0 means not snapping. show_cursorxy need to be enabled first in order to
+     * apply this configuration
+     **/
+    public int cursor_snap = 10;
+
+    /**
+     * Scroll the x axis with the latest point of the streams, the latest point
+     * will always be at the right edge and the number of units on x axis stays the
+     * same. See {@link grapher.Grapher#add_stream(Color, int, int)}
+     **/
+    public boolean auto_scroll = false;
+
     /** Show expressions on top left corner **/
     public boolean show_expressions = true;
 
@@ -104,4 +141,28 @@ public class Config extends BaseConfig {
      * show_cursorxy need to be enabled first in order to apply this configuration
      **/
     public DecimalFormat cursorlocation_decimal = new DecimalFormat("#0.00");
+
+    @Override
+    public Config snapshot() {
+	return (Config) super.snapshot();
+    }
+
+    @Override
+    protected int group(String name) {
+	switch (name) {
+	case "x_max":
+	case "x_min":
+	case "y_max":
+	case "y_min":
+	    return VIEWPORT;
+	case "density":
+	case "draft_density":
+	case "aggregate_points":
+	case "aggregate_eqhist":
+	case "link_points":
+	    return DATA;
+	default:
+	    return super.group(name);
+	}
+    }
 }
@@ -1,9 +1,13 @@
 package grapher;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.util.concurrent.SubmissionPublisher;
 
+import grapher.util.DoubleSeries;
 import grapher.util.Expression;
 import grapher.util.InvalidPoint;
+import grapher.util.MappedSeries;
 import grapher.util.Point;
 import util.Randomizer;
 
@@ -65,6 +69,62 @@ public class Demo {
 	 * Example of saving functions and points on graph to a txt file
 	 */
 	// outFileGrapher().show();
+
+	/*
+	 * Example of drawing points from a memory-mapped binary file
+	 */
+	// mappedGrapher().show();
+
+	/*
+	 * Example of receiving points from a publisher
+	 */
+	// publisherGrapher().show();
+    }
+
+    /**
+     * This is an example of receiving points from a publisher in another thread.
+     * The points are appended to the graph once per frame, and the publisher is
+     * slowed down if the graph cannot keep up.
+     */
+    public static Grapher publisherGrapher() {
+	Grapher g = new Grapher();
+	SubmissionPublisher<Point> publisher = new SubmissionPublisher<Point>();
+	g.subscribe(publisher); // Points from the publisher will be appended
+	Thread producer = new Thread(() -> {
+	    for (int i = 0; i < 100000; i++) {
+		publisher.submit(Randomizer.point_rand(-10, 10, -10, 10)); // Blocks if the graph falls behind
+	    }
+	    publisher.close();
+	});
+	producer.setDaemon(true);
+	producer.start();
+	return g;
+    }
+
+    /**
+     * This is an example of drawing a large amount of points that are stored in a
+     * binary file. The file is mapped into memory instead of being loaded, see
+     * {@link grapher.util.MappedSeries} for the file format.
+     */
+    public static Grapher mappedGrapher() {
+	int n = 1000000;
+	double[] xs = new double[n];
+	double[] ys = new double[n];
+	for (int i = 0; i < n; i++) {
+	    xs[i] = Randomizer.double_rand(-10, 10);
+	    ys[i] = Math.sin(xs[i]) * 5 + Randomizer.double_rand(-1, 1);
+	}
+	try {
+	    // Write the points to a binary file first
+	    MappedSeries.write("resources/points.bin", new DoubleSeries(xs, ys));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+	Config con = new Config();
+	con.point_size = 1;
+	Grapher g = new Grapher(con);
+	g.map_pts("resources/points.bin"); // Points are read from the file when rendering
+	return g;
     }
 
     public static Grapher readFileGrapher() {
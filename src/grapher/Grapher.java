@@ -4,19 +4,26 @@ import java.awt.Color;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
-import javax.swing.JPanel;
+import java.util.concurrent.Flow;
 
 import common.AbstractGraphTool;
+import common.BatchSubscriber;
 import common.Convertible;
+import common.RenderPanel;
+import common.SnapshotList;
+import common.events.ConvertEvent;
 import grapher.exceptions.SizeOutOfRangeException;
 import grapher.ui.GraphPanel;
+import grapher.util.AppendableSeries;
 import grapher.util.Buffer;
 import grapher.util.Expression;
+import grapher.util.InvalidPoint;
+import grapher.util.MappedSeries;
 import grapher.util.Point;
+import grapher.util.PointSeries;
+import grapher.util.RingSeries;
 import util.ExceptionHandler;
 
 /**
@@ -27,9 +34,16 @@ import util.ExceptionHandler;
  */
 public class Grapher extends AbstractGraphTool implements Convertible {
 
-    private List<Buffer> points_buffer;
-    private List<Expression> expressions;
-    private JPanel graphPanel;
+    /** Points and functions, producers may add them while rendering **/
+    private SnapshotList<Buffer> points_buffer;
+    private SnapshotList<Expression> expressions;
+    private volatile GraphPanel graphPanel;
+
+    /**
+     * The series that points are appended to, see
+     * {@link #append_pts(double, double)}
+     **/
+    private AppendableSeries live;
 
     /** Configuration **/
     private Config config;
@@ -52,8 +66,8 @@ public class Grapher extends AbstractGraphTool implements Convertible {
 	    throw new NullPointerException("Configuration cannot be null");
 	}
 	this.config = config;
-	points_buffer = new ArrayList<Buffer>();
-	expressions = new ArrayList<Expression>();
+	points_buffer = new SnapshotList<Buffer>();
+	expressions = new SnapshotList<Expression>();
     }
 
     /**
@@ -134,13 +148,182 @@ public class Grapher extends AbstractGraphTool implements Convertible {
 	} else if (check_result != ExceptionHandler.VALID_ARRAY) {
 	    throw new NullPointerException("Point at index " + check_result + " cannot be null");
 	}
-	points_buffer.add(new Buffer(points, c, size));
+	points_buffer.add(new Buffer(PointSeries.of(points), c, size));
+    }
+
+    /**
+     * Add a series of points on the graph. Different from
+     * {@link #add_pts(Point...)}, the points are stored in primitive arrays, which
+     * is recommended when there are a large amount of points.
+     * 
+     * @param series The series that contains points on the graph
+     *               {@link grapher.util.PointSeries}
+     */
+    public void add_pts(PointSeries series) {
+	add_pts(config.point_color, config.point_size, series);
+    }
+
+    /**
+     * Add a series of points on the graph with custom size and color.
+     * 
+     * @param c      The color of the points
+     * @param size   The size of the points
+     * @param series The series that contains points on the graph
+     *               {@link grapher.util.PointSeries}
+     */
+    public void add_pts(Color c, int size, PointSeries series) {
+	if (ExceptionHandler.isnull(c)) {
+	    throw new NullPointerException("Color cannot be null");
+	}
+	if (ExceptionHandler.outrange(size, 1, Integer.MAX_VALUE)) {
+	    throw new SizeOutOfRangeException("Size of the point must be greater than 0");
+	}
+	if (ExceptionHandler.isnull(series)) {
+	    throw new NullPointerException("Series cannot be null");
+	}
+	points_buffer.add(new Buffer(series, c, size));
+    }
+
+    /**
+     * Append a point to the graph. Different from {@link #add_pts(Point...)},
+     * appended points are coalesced into one series with the default color and
+     * size, so appending points one by one is cheap. If the graph is showing, only
+     * the area around the new point will be repainted.
+     * 
+     * @param x x value of the point
+     * @param y y value of the point, Double.NaN means the point is invalid
+     */
+    public void append_pts(double x, double y) {
+	AppendableSeries series = live_series();
+	int start = series.size();
+	long from = layers_version();
+	series.append(x, y);
+	repaint_tail(series, start, from);
+    }
+
+    /**
+     * Append points to the graph, see {@link #append_pts(double, double)}
+     * 
+     * @param xs x values of the points
+     * @param ys y values of the points, must have the same length with xs
+     */
+    public void append_pts(double[] xs, double[] ys) {
+	if (ExceptionHandler.isnull(xs) || ExceptionHandler.isnull(ys)) {
+	    throw new NullPointerException("Values cannot be null");
+	}
+	AppendableSeries series = live_series();
+	int start = series.size();
+	long from = layers_version();
+	series.appendAll(xs, ys);
+	repaint_tail(series, start, from);
+    }
+
+    /**
+     * Subscribe to a publisher of points, the points will be appended to the
+     * graph as {@link #append_pts(double, double)} does. Points that arrive
+     * between two frames are appended at once, and the publisher is slowed down
+     * if the graph cannot keep up, see {@link common.BatchSubscriber}.
+     * 
+     * @param publisher The publisher of points
+     * @return The subscriber, which can be used to cancel the subscription
+     */
+    public BatchSubscriber<Point> subscribe(Flow.Publisher<Point> publisher) {
+	BatchSubscriber<Point> subscriber = new BatchSubscriber<Point>() {
+	    @Override
+	    protected void publish(List<Point> items) {
+		double[] xs = new double[items.size()];
+		double[] ys = new double[items.size()];
+		for (int i = 0; i < xs.length; i++) {
+		    Point p = items.get(i);
+		    xs[i] = p.x;
+		    ys[i] = p instanceof InvalidPoint ? Double.NaN : p.y;
+		}
+		append_pts(xs, ys);
+	    }
+	};
+	publisher.subscribe(subscriber);
+	return subscriber;
+    }
+
+    // Get the series that points are appended to, create it if necessary.
+    // Producers may append on different threads, so only one series is created
+    private synchronized AppendableSeries live_series() {
+	if (live == null) {
+	    live = new AppendableSeries();
+	    add_pts(live);
+	}
+	return live;
+    }
+
+    // Get the version of the graph layers before points are appended, it is
+    // only needed to repaint the new points when the graph is showing
+    private long layers_version() {
+	return graphPanel != null && graphPanel.isShowing() ? graphPanel.layers_version() : 0;
+    }
+
+    // Repaint the area that covers the points appended from the given index
+    private void repaint_tail(AppendableSeries series, int start, long from) {
+	if (graphPanel != null && graphPanel.isShowing()) {
+	    // The previous point is included since they might be linked
+	    double[] bounds = series.bounds(Math.max(0, start - 1), series.size());
+	    if (!Double.isNaN(bounds[0])) {
+		graphPanel.repaint_points(bounds, config.point_size, from);
+	    }
+	}
+    }
+
+    /**
+     * Add a stream of points on the graph with custom size and color. The stream
+     * only keeps the latest points, and it never grows no matter how many points
+     * are appended. Points are appended by calling
+     * {@link grapher.util.RingSeries#append(double, double)} from one producer
+     * thread, and the graph will be repainted about 60 times a second while points
+     * are coming. Enable <code>Config.auto_scroll</code> to scroll the x axis with
+     * the latest point.
+     * 
+     * @param c        The color of the points
+     * @param size     The size of the points
+     * @param capacity Max number of points that the stream keeps
+     * @return The stream that points should be appended to
+     */
+    public RingSeries add_stream(Color c, int size, int capacity) {
+	RingSeries ring = new RingSeries(capacity);
+	// Streams that are added while the panel is created are watched once
+	synchronized (this) {
+	    add_pts(c, size, ring);
+	    if (graphPanel != null) {
+		graphPanel.watch(ring::version);
+	    }
+	}
+	return ring;
+    }
+
+    /**
+     * Map a binary points file and add it on the graph. The file will not be
+     * loaded into memory, points are read from the mapped file when they are
+     * needed, therefore, the file can be larger than the heap. The format of the
+     * file is explained in {@link grapher.util.MappedSeries}.
+     * 
+     * @param file The binary file that contains points
+     */
+    public void map_pts(String file) {
+	try {
+	    add_pts(new MappedSeries(file));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
     }
 
     @Override
-    protected JPanel getGraphPanel() {
+    protected synchronized RenderPanel getGraphPanel() {
 	if (graphPanel == null) {
 	    graphPanel = new GraphPanel(points_buffer, expressions, config);
+	    for (Buffer b : points_buffer) {
+		PointSeries s = b.getSeries();
+		if (s instanceof RingSeries) {
+		    graphPanel.watch(s::version);
+		}
+	    }
 	}
 	return graphPanel;
     }
@@ -158,19 +341,34 @@ public class Grapher extends AbstractGraphTool implements Convertible {
      */
     @Override
     public void read(String file) {
+	ConvertEvent event = new ConvertEvent("read", file);
+	event.begin();
 	try {
 	    List<String> lines = Files.readAllLines(Paths.get(file));
+	    // Points of the file are one series of their own, so files are not
+	    // linked to each other or to the appended points
+	    AppendableSeries series = new AppendableSeries();
 	    for (String line : lines) {
 		if (line.startsWith("y=")) {
 		    add_exp(new Expression(line.replace("y=", "")));
+		    event.records++;
 		} else if (line.startsWith("(")) {
 		    String[] loc = line.replaceAll("[()]", "").split(",");
-		    Point p = new Point();
-		    p.x = Double.parseDouble(loc[0]);
-		    p.y = Double.parseDouble(loc[1]);
-		    add_pts(p);
+		    series.append(Double.parseDouble(loc[0]), Double.parseDouble(loc[1]));
+		    event.records++;
 		}
 	    }
+	    if (series.size() > 0) {
+		add_pts(series);
+	    }
+	    if (event.shouldCommit()) {
+		event.bytes = Files.size(Paths.get(file));
+		event.commit();
+	    }
+	    // Functions may be added as well, so the whole graph is repainted
+	    if (graphPanel != null) {
+		graphPanel.repaint();
+	    }
 	} catch (IOException e) {
 	    e.printStackTrace();
 	}
@@ -184,20 +382,28 @@ public class Grapher extends AbstractGraphTool implements Convertible {
      */
     @Override
     public void out(String location) {
+	ConvertEvent event = new ConvertEvent("out", location);
+	event.begin();
 	StringBuilder sb = new StringBuilder();
-	for (int i = 0; i < expressions.size(); i++) {
-	    sb.append("y=" + expressions.get(i).toString() + "\n");
-	}
-	for (int i = 0; i < points_buffer.size(); i++) {
-	    Buffer b = points_buffer.get(i);
-	    Point[] p = b.getPoints();
-	    for (int j = 0; j < p.length; j++) {
-		Point sp = p[j];
-		sb.append("(" + sp.x + "," + sp.y + ")" + "\n");
+	List<Expression> exps = expressions.snapshot();
+	List<Buffer> bs = points_buffer.snapshot();
+	for (int i = 0; i < exps.size(); i++) {
+	    sb.append("y=" + exps.get(i).toString() + "\n");
+	}
+	for (int i = 0; i < bs.size(); i++) {
+	    Buffer b = bs.get(i);
+	    PointSeries p = b.getSeries().snapshot();
+	    for (int j = 0; j < p.size(); j++) {
+		sb.append("(" + p.getX(j) + "," + p.getY(j) + ")" + "\n");
 	    }
+	    event.records += p.size();
 	}
+	event.records += exps.size();
 	try {
-	    Files.write(Paths.get(location), sb.toString().getBytes());
+	    byte[] bytes = sb.toString().getBytes();
+	    Files.write(Paths.get(location), bytes);
+	    event.bytes = bytes.length;
+	    event.commit();
 	} catch (IOException e) {
 	    e.printStackTrace();
 	}
@@ -1,8 +1,10 @@
 package grapher.ui;
 
+import java.awt.Rectangle;
 import java.util.List;
 
 import common.RenderPanel;
+import common.SnapshotList;
 import grapher.Config;
 import grapher.ui.components.AxisNumbersComponent;
 import grapher.ui.components.CursorComponent;
@@ -12,6 +14,8 @@ import grapher.ui.components.PointComponent;
 import grapher.ui.components.listener.MotionListener;
 import grapher.util.Buffer;
 import grapher.util.Expression;
+import grapher.util.PointSeries;
+import grapher.util.RingSeries;
 
 /**
  * The GraphPanel is the JPanel that responsible for rendering
@@ -21,6 +25,12 @@ import grapher.util.Expression;
  */
 public class GraphPanel extends RenderPanel {
 
+    /** The component that renders points **/
+    private PointComponent pointCompo;
+
+    /** The points that rendered on screen **/
+    private List<Buffer> points;
+
     /**
      * Construct the graphpanel, all the rendering are done here.
      * 
@@ -30,13 +40,73 @@ public class GraphPanel extends RenderPanel {
      */
     public GraphPanel(List<Buffer> points, List<Expression> expressions, Config config) {
 	super(config);
+	this.points = points;
 	super.addRenderable(new LayoutComponent(config));
 	super.addRenderable(new AxisNumbersComponent(config));
 	super.addRenderable(new FunctionComponent(config).add_exp(expressions));
-	super.addRenderable(new PointComponent(config).add_pts(points));
+	pointCompo = new PointComponent(config);
+	pointCompo.add_pts(points);
+	super.addRenderable(pointCompo);
 	// Cursor component is special since it requires motion listener
 	CursorComponent cursorCompo = new CursorComponent(config);
+	cursorCompo.add_pts(points);
+	cursorCompo.add_exp(expressions);
 	addMouseMotionListener(new MotionListener(this, cursorCompo));
 	super.addRenderable(cursorCompo);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void prepare() {
+	Config c = (Config) config;
+	if (c.auto_scroll) {
+	    scroll(c);
+	}
+    }
+
+    // Scroll the x axis so that the latest point of the streams is at the right
+    private void scroll(Config c) {
+	double latest = Double.NaN;
+	List<Buffer> bs = SnapshotList.snapshot(points);
+	for (int i = 0; i < bs.size(); i++) {
+	    PointSeries s = bs.get(i).getSeries();
+	    if (s instanceof RingSeries) {
+		double x = ((RingSeries) s).getLatestX();
+		if (Double.isNaN(latest) || x > latest) {
+		    latest = x;
+		}
+	    }
+	}
+	// Rendering without a window may scroll at the same time
+	synchronized (c) {
+	    if (Double.isNaN(latest) || (int) Math.ceil(latest) == c.x_max) {
+		return;
+	    }
+	    int span = c.x_max - c.x_min;
+	    c.x_max = (int) Math.ceil(latest);
+	    c.x_min = c.x_max - span;
+	}
+	c.commit();
+    }
+
+    /**
+     * Repaint the area that covers the given bounds in axis, it is used when new
+     * points are added in that area. Only the area of the cached layers is
+     * rendered again, see {@link common.RenderPanel#invalidate_region(Rectangle, long)}.
+     * 
+     * @param bounds {min x, max x, min y, max y} in axis
+     * @param pad    Number of pixels that will be added on every side, usually
+     *               the size of the points
+     * @param from   The version of the layers before the points were added, see
+     *               {@link common.RenderPanel#layers_version()}
+     */
+    public void repaint_points(double[] bounds, int pad, long from) {
+	if (((Config) config).aggregate_points) {
+	    // Shading depends on all points, the whole graph has to be repainted
+	    repaint();
+	} else {
+	    Rectangle r = pointCompo.bounds_of(bounds, pad);
+	    invalidate_region(r, from);
+	    repaint(r);
+	}
+    }
+}
@@ -37,4 +37,13 @@ public class AxisNumbersComponent extends GraphComponent {
 	    }
 	}
     }
+
+    /**
+     * The numbers are only labels of the axis, they are skipped on drafts, see
+     * {@link common.Renderable#isOptional()}.
+     */
+    @Override
+    public boolean isOptional() {
+	return true;
+    }
 }
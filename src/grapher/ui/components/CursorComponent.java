@@ -1,13 +1,25 @@
 package grapher.ui.components;
 
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
 
+import common.SnapshotList;
 import grapher.Config;
+import grapher.util.Buffer;
+import grapher.util.Expression;
+import grapher.util.GridIndex;
 
 /**
  * The cursor component responsible for rendering the cursor to a small
- * rectangle and showing x,y values on the top left corner. It requires
- * MotionListener, therefore, it is a bit different from other components
+ * rectangle and showing x,y values on the top left corner. The cursor snaps to
+ * the closest point nearby, and the y values of the functions at the cursor are
+ * shown as well. Only indexed points are snapped to, so streams are not, see
+ * {@link grapher.util.Buffer#getIndex()}. It requires MotionListener,
+ * therefore, it is a bit different from other components
  * 
  * @author Daniel Xu
  *
@@ -17,19 +29,180 @@ public class CursorComponent extends GraphComponent {
     /** The cursor location, out of screen by default **/
     private int cursor_x = -5, cursor_y = -5;
 
+    /** Points that the cursor can snap to **/
+    private List<Buffer> buffers;
+
+    /** Functions that being shown at the cursor **/
+    private List<Expression> expressions;
+
+    /** The region rendered last time, null if nothing was rendered **/
+    private Rectangle painted;
+
+    /** The readout at the cursor, reused until anything that it shows changes **/
+    private Readout cached;
+
     public CursorComponent(Config config) {
 	super(config);
     }
 
+    @Override
+    public GraphComponent add_pts(List<Buffer> l) {
+	this.buffers = l;
+	return this;
+    }
+
+    @Override
+    public GraphComponent add_exp(List<Expression> l) {
+	this.expressions = l;
+	return this;
+    }
+
+    @Override
+    public boolean isStatic() {
+	return false;
+    }
+
     @Override
     public void render(Graphics g) {
+	painted = null;
 	if (config.show_cursorxy) {
+	    Readout r = readout();
 	    g.setColor(config.cursorlocation_color);
+	    if (r.snap != null) {
+		int px = (int) Math.round(r.snap[0] * xratio) + origin_x;
+		int py = (int) Math.round(-r.snap[1] * yratio) + origin_y;
+		g.drawRect(px - 4, py - 4, 8, 8);
+	    }
 	    g.fillRect(cursor_x - 2, cursor_y - 2, 4, 4);
+	    for (int i = 0; i < r.lines.length; i++) {
+		if (i >= 2) {
+		    // The y values of the functions are in their colors
+		    Expression exp = r.exps.get(i - 2);
+		    g.setColor(exp.getColor() == null ? config.func_color : exp.getColor());
+		}
+		g.drawString(r.lines[i], 5, 15 + i * 13);
+	    }
+	    painted = region(g.getFontMetrics(), r.snap, r.lines);
+	}
+    }
+
+    /**
+     * Get the region that needs to be repainted after the cursor location is
+     * changed, which is the union of the region rendered last time and the region
+     * that will be rendered at the new location, including the text. The snapped
+     * point and the text are kept for the next render, so they are only computed
+     * once for each mouse event, and not again for repaints of the cursor that
+     * change nothing that it shows.
+     * 
+     * @param fm The FontMetrics of the text
+     * @return The region in pixels, null if nothing needs to be repainted
+     */
+    public Rectangle dirty_region(FontMetrics fm) {
+	Rectangle r = painted;
+	if (config.show_cursorxy) {
+	    Readout n = readout();
+	    Rectangle region = region(fm, n.snap, n.lines);
+	    r = r == null ? region : r.union(region);
+	}
+	return r;
+    }
+
+    // The readout at the cursor, the cached one is reused if neither the cursor,
+    // the view, the configuration nor the points have changed since. Only the
+    // y values of the functions are computed again if some of them were not
+    // sampled yet
+    private Readout readout() {
+	int[] view = { cursor_x, cursor_y, origin_x, origin_y, xratio, yratio };
+	long version = config.version() + SnapshotList.version(expressions) + SnapshotList.version(buffers);
+	List<Buffer> bs = buffers == null ? null : SnapshotList.snapshot(buffers);
+	for (int i = 0; bs != null && i < bs.size(); i++) {
+	    version += bs.get(i).getSeries().version();
+	}
+	Readout r = cached;
+	if (r == null || r.version != version || !Arrays.equals(r.view, view)) {
 	    double[] trans = super.re_translate(cursor_x, cursor_y);
-	    g.drawString("x = " + config.cursorlocation_decimal.format(trans[0]), 5, 15);
-	    g.drawString("y = " + config.cursorlocation_decimal.format(trans[1]), 5, 28);
+	    r = new Readout(view, version, snap(bs, trans[0], trans[1]), trans[0]);
+	} else if (r.complete) {
+	    return r;
+	}
+	List<Expression> exps = expressions == null ? null : SnapshotList.snapshot(expressions);
+	r.exps = exps;
+	r.lines = readout(r, exps);
+	cached = r;
+	return r;
+    }
+
+    // The lines of text, the location and the y values of the functions at the
+    // cursor, the readout is complete unless some functions are not sampled yet
+    private String[] readout(Readout r, List<Expression> exps) {
+	String[] lines = new String[2 + (exps == null ? 0 : exps.size())];
+	double[] location = r.snap == null ? super.re_translate(cursor_x, cursor_y) : r.snap;
+	lines[0] = "x = " + format(location[0]);
+	lines[1] = "y = " + format(location[1]);
+	r.complete = true;
+	for (int i = 2; i < lines.length; i++) {
+	    Expression exp = exps.get(i - 2);
+	    // The functions may still be sampled in background
+	    double y = exp.interpolate_sampled(r.x, config.x_min, config.x_max, config.density);
+	    r.complete &= !Double.isNaN(y);
+	    lines[i] = exp.getExpression() + " = " + (Double.isNaN(y) ? "-" : format(y));
+	}
+	return lines;
+    }
+
+    // DecimalFormat is not thread-safe and components may be rendered in parallel
+    private String format(double v) {
+	DecimalFormat f = config.cursorlocation_decimal;
+	synchronized (f) {
+	    return f.format(v);
+	}
+    }
+
+    // The region that covers the cursor, the snapped point and the text
+    private Rectangle region(FontMetrics fm, double[] snap, String[] lines) {
+	Rectangle r = new Rectangle(cursor_x - 2, cursor_y - 2, 4, 4);
+	if (snap != null) {
+	    int px = (int) Math.round(snap[0] * xratio) + origin_x;
+	    int py = (int) Math.round(-snap[1] * yratio) + origin_y;
+	    r.add(new Rectangle(px - 4, py - 4, 9, 9));
 	}
+	int width = 0;
+	for (String line : lines) {
+	    width = Math.max(width, fm.stringWidth(line));
+	}
+	r.add(new Rectangle(5, 15 - fm.getAscent(), width, (lines.length - 1) * 13 + fm.getHeight()));
+	// Antialiasing may touch the pixels around
+	r.grow(2, 2);
+	return r;
+    }
+
+    // Find the closest point to the given location, return null if no point is
+    // close enough. Only indexed buffers are searched, streams are not snapped
+    // to, see Buffer#getIndex()
+    private double[] snap(List<Buffer> bs, double x, double y) {
+	if (bs == null || config.cursor_snap <= 0) {
+	    return null;
+	}
+	double[] best = null;
+	double best_d = (double) config.cursor_snap * config.cursor_snap;
+	for (int i = 0; i < bs.size(); i++) {
+	    GridIndex index = bs.get(i).getIndex();
+	    if (index != null) {
+		int j = index.nearest(x, y, xratio, yratio, Math.sqrt(best_d));
+		if (j != -1) {
+		    best = new double[] { index.getSeries().getX(j), index.getSeries().getY(j) };
+		    best_d = distance(x, y, best[0], best[1]);
+		}
+	    }
+	}
+	return best;
+    }
+
+    // Squared distance in pixels between two locations in axis
+    private double distance(double x1, double y1, double x2, double y2) {
+	double dx = (x2 - x1) * xratio;
+	double dy = (y2 - y1) * yratio;
+	return dx * dx + dy * dy;
     }
 
     /**
@@ -43,4 +216,23 @@ public class CursorComponent extends GraphComponent {
 	this.cursor_y = y;
     }
 
+    // The snapped point and the text at a cursor location, and what they are
+    // computed from
+    private static class Readout {
+	private int[] view;
+	private long version;
+	private double[] snap;
+	private double x;
+	private String[] lines;
+	private List<Expression> exps;
+	private boolean complete;
+
+	private Readout(int[] view, long version, double[] snap, double x) {
+	    this.view = view;
+	    this.version = version;
+	    this.snap = snap;
+	    this.x = x;
+	}
+    }
+
 }
@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.util.List;
 
+import common.SnapshotList;
 import grapher.Config;
 import grapher.util.Expression;
 
@@ -29,19 +30,25 @@ public class FunctionComponent extends GraphComponent {
 	return this;
     }
 
+    @Override
+    public long version() {
+	return SnapshotList.version(expressions);
+    }
+
     @Override
     public void render(Graphics g) {
+	List<Expression> exps = SnapshotList.snapshot(expressions);
 	// Iterate and render all points, connect them with Path
-	for (int i = 0; i < expressions.size(); i++) {
-	    super.render_expression(g, expressions.get(i));
+	for (int i = 0; i < exps.size(); i++) {
+	    super.render_expression(g, exps.get(i));
 	}
-	renderexpressions(g);
+	renderexpressions(g, exps);
     }
 
-    private void renderexpressions(Graphics g) {
+    private void renderexpressions(Graphics g, List<Expression> exps) {
 	if (config.show_expressions) {
-	    for (int i = 0; i < expressions.size(); i++) {
-		Expression exp = expressions.get(i);
+	    for (int i = 0; i < exps.size(); i++) {
+		Expression exp = exps.get(i);
 		Color c = exp.getColor() == null ? config.func_color : exp.getColor();
 		String sexp = exp.getExpression();
 		g.setColor(c);
@@ -2,17 +2,20 @@ package grapher.ui.components;
 
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.util.List;
 
+import common.BaseConfig;
+import common.Rasterizer;
+import common.RenderPanel;
 import common.Renderable;
 import grapher.Config;
 import grapher.util.Buffer;
 import grapher.util.Expression;
-import grapher.util.InvalidPoint;
 import grapher.util.Point;
-import util.Evaluator;
+import grapher.util.PointSeries;
 
 /**
  * GraphComponent is the abstract parent class that every components should
@@ -25,7 +28,7 @@ import util.Evaluator;
  * @author Daniel Xu
  *
  */
-public abstract class GraphComponent implements Renderable {
+public abstract class GraphComponent implements Renderable, Cloneable {
 
     /** The Grapher configuration **/
     protected Config config;
@@ -39,11 +42,21 @@ public abstract class GraphComponent implements Renderable {
 
     public GraphComponent(Config config) {
 	this.config = config;
-	init();
+	update();
+	// Ratios and origin depend on the size and range of the graph
+	config.addListener((c, group) -> {
+	    if (group == Config.VIEWPORT) {
+		update();
+	    }
+	});
     }
 
-    // Init some of the important vars
-    private void init() {
+    /**
+     * Calculate the units, ratios and origin from the configuration again, it is
+     * called when the size or range of the graph is found changed, see
+     * {@link common.BaseConfig#commit()}
+     */
+    public void update() {
 	xunit = config.x_max - config.x_min;
 	yunit = config.y_max - config.y_min;
 	xratio = config.width / xunit;
@@ -52,6 +65,23 @@ public abstract class GraphComponent implements Renderable {
 	origin_y = config.height - (-config.y_min * yratio);
     }
 
+    /**
+     * The snapshot is a copy of the component with its own ratios and origin,
+     * which are calculated from the snapshot of the configuration. The data is
+     * shared with the component.
+     */
+    @Override
+    public Renderable snapshot(BaseConfig config) {
+	try {
+	    GraphComponent c = (GraphComponent) clone();
+	    c.config = (Config) config;
+	    c.update();
+	    return c;
+	} catch (CloneNotSupportedException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
     /**
      * Translate x,y values in axis to pixels
      * 
@@ -74,6 +104,21 @@ public abstract class GraphComponent implements Renderable {
 	return new double[] { x / xratio + config.x_min, -y / yratio + config.y_max };
     }
 
+    /**
+     * Get the area in pixels that covers the given bounds in axis
+     * 
+     * @param bounds {min x, max x, min y, max y} in axis
+     * @param pad    Number of pixels that will be added on every side
+     * @return The area in pixels
+     */
+    public Rectangle bounds_of(double[] bounds, int pad) {
+	int x0 = (int) Math.floor(origin_x + bounds[0] * xratio) - pad;
+	int x1 = (int) Math.ceil(origin_x + bounds[1] * xratio) + pad;
+	int y0 = (int) Math.floor(origin_y - bounds[3] * yratio) - pad;
+	int y1 = (int) Math.ceil(origin_y - bounds[2] * yratio) + pad;
+	return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
     /**
      * Transform the axis to the origin. That means the (0,0) on the graph will be
      * the origin. However, it is necessary to reset the origin back since it will
@@ -97,27 +142,7 @@ public abstract class GraphComponent implements Renderable {
      *         length will be (max-min)*density
      */
     protected Point[] points_inrange(Expression exp, int min, int max, int density) {
-	Point[] pts;
-	// The number of units for x-axis and y-axis
-	int unit = max - min;
-	density = density * unit;
-	pts = new Point[density];
-	float step = unit / (float) density;
-	// Setup points
-	for (int i = 0; i < density; i++) {
-	    float x = min + i * step;
-	    Point p = null;
-	    try {
-		p = new Point();
-		p.x = x;
-		p.y = Evaluator.evaluate(exp.getExpression().replace("x", "(" + String.valueOf(x) + ")"));
-		pts[i] = p;
-	    } catch (UnsupportedOperationException e) {
-		p = new InvalidPoint(x);
-		pts[i] = p;
-	    }
-	}
-	return pts;
+	return exp.sample(min, max, density).toPoints();
     }
 
     /**
@@ -132,25 +157,49 @@ public abstract class GraphComponent implements Renderable {
 	AffineTransform transform = g2d.getTransform();
 	transform_to_origin(g2d);
 	g2d.setColor(config.func_color);
-	// Iterate and render all points, connect them with Path
-	Point[] exp_pts = points_inrange(e, config.x_min, config.x_max, config.density);
+	// Iterate and render all points, connect them with Path, drafts are sampled
+	// with less points
+	int density = RenderPanel.is_draft(g2d) ? Math.min(config.draft_density, config.density) : config.density;
+	PointSeries exp_pts = e.sample(config.x_min, config.x_max, Math.max(1, density));
+	g2d.setColor(e.getColor());
+	Rasterizer r = Rasterizer.of(g2d, config, exp_pts.size());
+	if (r != null) {
+	    render_expression(r, exp_pts);
+	    g2d.setTransform(transform);
+	    return;
+	}
 	Path2D path = new Path2D.Float();
-	for (int j = 0; j < exp_pts.length; j++) {
-	    Point p = exp_pts[j];
-	    if (!(p instanceof InvalidPoint)) {
-		double[] trans = translate(p.x, p.y);
+	for (int j = 0; j < exp_pts.size(); j++) {
+	    if (exp_pts.isValid(j)) {
+		double[] trans = translate(exp_pts.getX(j), exp_pts.getY(j));
 		if (path.getCurrentPoint() == null)
 		    path.moveTo(trans[0], trans[1]);
 		else
 		    path.lineTo(trans[0], trans[1]);
 	    }
 	}
-	g2d.setColor(e.getColor());
 	g2d.draw(path);
 	// Remember to reset origin back to normal
 	g2d.setTransform(transform);
     }
 
+    // Draw the sampled points of a expression as lines directly on the image
+    private void render_expression(Rasterizer r, PointSeries pts) {
+	boolean linked = false;
+	double last_x = 0, last_y = 0;
+	for (int j = 0; j < pts.size(); j++) {
+	    if (pts.isValid(j)) {
+		double x = pts.getX(j) * xratio, y = -pts.getY(j) * yratio;
+		if (linked) {
+		    r.line(last_x, last_y, x, y);
+		}
+		last_x = x;
+		last_y = y;
+		linked = true;
+	    }
+	}
+    }
+
     /**
      * Add a list of expressions to the component. If necessary, some classes may
      * override this method in order to get the list.
@@ -173,4 +222,13 @@ public abstract class GraphComponent implements Renderable {
 	return this;
     }
 
+    /**
+     * Components are static unless they are changed without changing the
+     * version, see {@link common.Renderable#isStatic()}.
+     */
+    @Override
+    public boolean isStatic() {
+	return true;
+    }
+
 }
@@ -2,26 +2,65 @@ package grapher.ui.components;
 
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Shape;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import common.Rasterizer;
+import common.SnapshotList;
+import common.SvgGraphics;
 import grapher.Config;
 import grapher.util.Buffer;
-import grapher.util.Point;
+import grapher.util.DensityGrid;
+import grapher.util.GridIndex;
+import grapher.util.PointSeries;
 
 /**
  * The point component reponsible for rendering points and lines that link them
- * together.
+ * together. Large buffers that are not linked are rendered through their
+ * spatial index {@link grapher.util.GridIndex}, so only the points that are
+ * visible will be rendered. Streams, whose points are replaced all the time,
+ * are not indexed and are rendered in full, see
+ * {@link grapher.util.Buffer#getIndex()}. Points can also be aggregated into
+ * pixels by {@link grapher.util.DensityGrid}, see
+ * <code>Config.aggregate_points</code>.
+ * Circles are stamped from small images rather than filled one by one, see
+ * {@link Markers}.
  * 
  * @author Daniel Xu
  *
  */
 public class PointComponent extends GraphComponent {
 
+    /** Buffers that have more points than this will be rendered by index **/
+    private static final int INDEX_THRESHOLD = 1024;
+
+    /** Circles are stamped at this many positions within a pixel on each axis **/
+    private static final int PHASES = 8;
+
+    /** Circles larger than this are filled rather than stamped **/
+    private static final int MAX_STAMP = 64;
+
+    /** Max number of colors and sizes whose circles are kept **/
+    private static final int MAX_STAMPS = 32;
+
+    /** Shaded density of the buffers when points are aggregated **/
+    private final Map<Buffer, Shade> shades = new WeakHashMap<Buffer, Shade>();
+
+    /**
+     * Circles that are stamped, by their color, size and antialiasing, they are
+     * kept across frames and shared by the tiles
+     **/
+    private final Map<Long, BufferedImage[]> stamps = new HashMap<Long, BufferedImage[]>();
+
     /** Points that being rendered **/
     private List<Buffer> buffers;
 
@@ -35,35 +74,219 @@ public class PointComponent extends GraphComponent {
 	return this;
     }
 
+    @Override
+    public long version() {
+	long version = SnapshotList.version(buffers);
+	for (Buffer b : SnapshotList.snapshot(buffers)) {
+	    version += b.getSeries().version();
+	}
+	return version;
+    }
+
     @Override
     public void render(Graphics g) {
 	Graphics2D g2d = (Graphics2D) g;
+	// The visible range in axis
+	Rectangle clip = g2d.getClipBounds();
+	if (clip == null) {
+	    clip = new Rectangle(0, 0, config.width, config.height);
+	}
+	double[] top_left = re_translate(clip.x, clip.y);
+	double[] bottom_right = re_translate(clip.x + clip.width, clip.y + clip.height);
 	AffineTransform transform = g2d.getTransform();
 	super.transform_to_origin(g2d);
-	for (int i = 0; i < buffers.size(); i++) {
-	    Buffer b = buffers.get(i);
-	    int size = b.getSize();
-	    Path2D path = new Path2D.Float();
+	List<Buffer> bs = SnapshotList.snapshot(buffers);
+	Markers markers = new Markers(g2d);
+	for (int i = 0; i < bs.size(); i++) {
+	    Buffer b = bs.get(i);
+	    long version = b.getSeries().version();
+	    PointSeries series = b.getSeries().snapshot();
 	    g2d.setColor(b.getColor());
-	    for (int j = 0; j < b.getPoints().length; j++) {
-		Point p = b.getPoints()[j];
-		double[] trans = translate(p.x, p.y);
-		Shape s;
-		if (config.point_cicrle) {
-		    s = new Ellipse2D.Double(trans[0] - (size / 2), trans[1] - (size / 2), size, size);
-		} else {
-		    s = new Rectangle2D.Double(trans[0] - (size / 2), trans[1] - (size / 2), size, size);
-		}
-		g2d.fill(s);
-		if (j == 0)
-		    path.moveTo(trans[0], trans[1]);
-		else
-		    path.lineTo(trans[0], trans[1]);
+	    markers.reset(b.getSize(), series.size());
+	    boolean indexed_render = !config.aggregate_points && !config.link_points && series.size() > INDEX_THRESHOLD;
+	    GridIndex index = indexed_render ? b.getIndex() : null;
+	    if (config.aggregate_points) {
+		g2d.drawImage(shade(b, series, version), -origin_x, -origin_y, null);
+	    } else if (index != null) {
+		// Points that are partially visible should also be rendered
+		double pad_x = b.getSize() / (double) xratio;
+		double pad_y = b.getSize() / (double) yratio;
+		PointSeries indexed = index.getSeries();
+		index.query(top_left[0] - pad_x, bottom_right[0] + pad_x, bottom_right[1] - pad_y, top_left[1] + pad_y,
+			j -> markers.add(indexed.getX(j), indexed.getY(j)));
+	    } else {
+		render_buffer(g2d, markers, series);
 	    }
-	    if (config.link_points)
-		g2d.draw(path);
 	}
 	g2d.setTransform(transform);
     }
 
+    // Get the shaded density of the buffer, it is only computed again when the
+    // points or the configuration are changed, so tiles rendered in parallel share
+    // one shade
+    private BufferedImage shade(Buffer b, PointSeries series, long version) {
+	version += config.version();
+	synchronized (shades) {
+	    Shade s = shades.get(b);
+	    if (s == null || s.version != version) {
+		DensityGrid grid = new DensityGrid(series, config.width, config.height, origin_x, xratio, origin_y,
+			-yratio);
+		s = new Shade(version, grid.shade(b.getColor(), config.aggregate_eqhist));
+		shades.put(b, s);
+	    }
+	    return s.image;
+	}
+    }
+
+    // Render all points in the buffer in order, and link them if necessary
+    private void render_buffer(Graphics2D g2d, Markers markers, PointSeries series) {
+	Rasterizer r = markers.rasterizer;
+	Path2D path = config.link_points && r == null ? new Path2D.Float() : null;
+	boolean linked = false;
+	double last_x = 0, last_y = 0;
+	for (int j = 0; j < series.size(); j++) {
+	    // Invalid points are not drawn and they break the link
+	    if (!series.isValid(j)) {
+		linked = false;
+		continue;
+	    }
+	    double x = series.getX(j), y = series.getY(j);
+	    markers.add(x, y);
+	    if (path != null) {
+		if (!linked)
+		    path.moveTo(x * xratio, -y * yratio);
+		else
+		    path.lineTo(x * xratio, -y * yratio);
+	    } else if (config.link_points) {
+		if (linked)
+		    r.line(last_x, last_y, x * xratio, -y * yratio);
+		last_x = x * xratio;
+		last_y = -y * yratio;
+	    }
+	    linked = true;
+	}
+	if (path != null)
+	    g2d.draw(path);
+    }
+
+    /**
+     * Renders the markers of the points of a buffer without allocating anything
+     * for each point. Markers of large buffers are drawn on the image directly if
+     * possible, see {@link common.Rasterizer}, and squares are always drawn on
+     * the image if it can be, in any quality, since their coverage is exact.
+     * Filling ellipses is several times slower, so circles are rendered once
+     * into small images, one for each eighth of a pixel they can start at, and
+     * the images are stamped for every point. The images are kept for the next
+     * frames, see {@link PointComponent#stamps}. Circles are only stamped when
+     * the graphics is a raster that is not scaled.
+     * <p>
+     * Otherwise, markers are filled one by one, Java2D fills them faster than one
+     * path of many markers, and svg images merge consecutive markers into one
+     * path themselves, see {@link common.SvgGraphics}.
+     */
+    private class Markers {
+	private final Graphics2D g2d;
+	private final Rectangle2D.Double rect = new Rectangle2D.Double();
+	private final Ellipse2D.Double ellipse = new Ellipse2D.Double();
+
+	/** Whether the graphics allows circles to be stamped **/
+	private final boolean raster;
+
+	/** Rasterizer of the buffer, null if markers are drawn by Java2D **/
+	private Rasterizer rasterizer;
+
+	/** Circles that are stamped, by the position within a pixel **/
+	private BufferedImage[] circles;
+
+	/** Size of the markers in pixels **/
+	private int size;
+
+	private Markers(Graphics2D g2d) {
+	    this.g2d = g2d;
+	    AffineTransform t = g2d.getTransform();
+	    raster = !(g2d instanceof SvgGraphics) && (t.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0
+		    && t.getTranslateX() == Math.rint(t.getTranslateX())
+		    && t.getTranslateY() == Math.rint(t.getTranslateY());
+	}
+
+	// Start the markers of a buffer, with the color of the graphics
+	private void reset(int size, int points) {
+	    this.size = size;
+	    // Squares are drawn on the image in any quality since their coverage is exact
+	    rasterizer = config.point_cicrle ? Rasterizer.of(g2d, config, points) : Rasterizer.of(g2d);
+	    circles = rasterizer == null && raster && config.point_cicrle && size <= MAX_STAMP ? circles() : null;
+	}
+
+	// Render the marker of a point in axis
+	private void add(double x, double y) {
+	    // Same as translate, without allocating arrays
+	    double left = x * xratio - (size / 2);
+	    double top = -y * yratio - (size / 2);
+	    if (rasterizer != null) {
+		if (config.point_cicrle)
+		    rasterizer.fill_circle(left + size / 2.0, top + size / 2.0, size / 2.0);
+		else
+		    rasterizer.fill_rect(left, top, size, size);
+	    } else if (circles != null) {
+		double px = Math.floor(left), py = Math.floor(top);
+		int phase = (int) ((top - py) * PHASES) * PHASES + (int) ((left - px) * PHASES);
+		g2d.drawImage(circles[phase], (int) px, (int) py, null);
+	    } else if (!config.point_cicrle) {
+		rect.setRect(left, top, size, size);
+		g2d.fill(rect);
+	    } else {
+		ellipse.setFrame(left, top, size, size);
+		g2d.fill(ellipse);
+	    }
+	}
+
+	// Get the circles of the color and size for every position within a pixel,
+	// they are rendered with the hints of the graphics when first used
+	private BufferedImage[] circles() {
+	    Object antialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+	    boolean aa = RenderingHints.VALUE_ANTIALIAS_ON.equals(antialias);
+	    long key = (g2d.getColor().getRGB() & 0xffffffffL) << 8 | size << 1 | (aa ? 1 : 0);
+	    synchronized (stamps) {
+		BufferedImage[] images = stamps.get(key);
+		if (images == null) {
+		    if (stamps.size() >= MAX_STAMPS) {
+			stamps.clear();
+		    }
+		    images = new BufferedImage[PHASES * PHASES];
+		    for (int py = 0; py < PHASES; py++) {
+			for (int px = 0; px < PHASES; px++) {
+			    images[py * PHASES + px] = stamp(px, py);
+			}
+		    }
+		    stamps.put(key, images);
+		}
+		return images;
+	    }
+	}
+
+	// Render the circle that starts at the given eighths of a pixel
+	private BufferedImage stamp(int px, int py) {
+	    BufferedImage stamp = new BufferedImage(size + 1, size + 1, BufferedImage.TYPE_INT_ARGB_PRE);
+	    Graphics2D g = stamp.createGraphics();
+	    g.setRenderingHints(g2d.getRenderingHints());
+	    g.setColor(g2d.getColor());
+	    g.fill(new Ellipse2D.Double(px / (double) PHASES, py / (double) PHASES, size, size));
+	    g.dispose();
+	    return stamp;
+	}
+    }
+
+    /**
+     * Shaded density of a buffer and the version it was computed with
+     */
+    private static class Shade {
+	private long version;
+	private BufferedImage image;
+
+	private Shade(long version, BufferedImage image) {
+	    this.version = version;
+	    this.image = image;
+	}
+    }
+
 }
@@ -1,5 +1,6 @@
 package grapher.ui.components.listener;
 
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
 
@@ -34,7 +35,11 @@ public class MotionListener implements MouseMotionListener {
     @Override
     public void mouseMoved(MouseEvent e) {
 	compo.set_cursorlocation(e.getX(), e.getY());
-	parent.repaint();
+	// Only the old and new area of the cursor
+	Rectangle r = compo.dirty_region(parent.getFontMetrics(parent.getFont()));
+	if (r != null) {
+	    parent.repaint(r);
+	}
     }
 
 }
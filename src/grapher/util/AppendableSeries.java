@@ -0,0 +1,170 @@
+package grapher.util;
+
+import java.util.Arrays;
+
+/**
+ * A {@link grapher.util.PointSeries} that points can be appended to. The points
+ * are stored in primitive arrays which grow by half of their length when they
+ * are full, therefore, appending points one by one is cheap. A point that has
+ * Double.NaN as y value is appended as an invalid point.<br>
+ * Points can be appended by any number of threads, appends are serialized by
+ * the lock of the series. Readers do not take the lock, they read
+ * {@link #snapshot()} while points are being appended, the snapshot is cheap
+ * since the points are not copied.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class AppendableSeries extends PointSeries {
+
+    /** x and y values, only the first size values are used **/
+    private double[] xs, ys;
+
+    /** Set bit means the point at that index is valid **/
+    private long[] valid;
+
+    /** Number of points, written after the points are stored **/
+    private volatile int size;
+
+    /**
+     * Construct an empty series with the default capacity
+     */
+    public AppendableSeries() {
+	this(16);
+    }
+
+    /**
+     * Construct an empty series that can hold the given number of points before
+     * it grows
+     * 
+     * @param capacity Initial capacity, minimum value should be 1
+     */
+    public AppendableSeries(int capacity) {
+	capacity = Math.max(1, capacity);
+	xs = new double[capacity];
+	ys = new double[capacity];
+	valid = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Append a point to the end of the series
+     * 
+     * @param x x value
+     * @param y y value, Double.NaN means the point is invalid
+     */
+    public synchronized void append(double x, double y) {
+	ensure(size + 1);
+	put(size, x, y);
+	size++;
+    }
+
+    /**
+     * Append points to the end of the series
+     * 
+     * @param xs x values
+     * @param ys y values, must have the same length with xs
+     */
+    public synchronized void appendAll(double[] xs, double[] ys) {
+	if (xs.length != ys.length) {
+	    throw new IllegalArgumentException("Length of x values and y values must be the same");
+	}
+	ensure(size + xs.length);
+	for (int i = 0; i < xs.length; i++) {
+	    put(size + i, xs[i], ys[i]);
+	}
+	size += xs.length;
+    }
+
+    // Store a point at the given index
+    private void put(int i, double x, double y) {
+	xs[i] = x;
+	ys[i] = y;
+	if (Double.isNaN(y)) {
+	    valid[i >>> 6] &= ~(1L << i);
+	} else {
+	    valid[i >>> 6] |= 1L << i;
+	}
+    }
+
+    // Grow the arrays so that they can hold at least the given number of points
+    private void ensure(int capacity) {
+	if (capacity > xs.length) {
+	    int grown = Math.max(capacity, xs.length + (xs.length >> 1) + 1);
+	    xs = Arrays.copyOf(xs, grown);
+	    ys = Arrays.copyOf(ys, grown);
+	    valid = Arrays.copyOf(valid, (grown + 63) >>> 6);
+	}
+    }
+
+    @Override
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public double getX(int i) {
+	return xs[i];
+    }
+
+    @Override
+    public double getY(int i) {
+	return isValid(i) ? ys[i] : Double.NaN;
+    }
+
+    @Override
+    public boolean isValid(int i) {
+	return (valid[i >>> 6] & (1L << i)) != 0;
+    }
+
+    @Override
+    public long version() {
+	return size;
+    }
+
+    @Override
+    public PointSeries snapshot() {
+	// Read size first, points before it are stored completely
+	int n = size;
+	return new View(xs, ys, valid, n);
+    }
+
+    // The points of the series at the moment of the snapshot. Appended points
+    // are stored after n or in new arrays, so the view never changes
+    private static class View extends PointSeries {
+	private final double[] xs, ys;
+	private final long[] valid;
+	private final int n;
+
+	private View(double[] xs, double[] ys, long[] valid, int n) {
+	    this.xs = xs;
+	    this.ys = ys;
+	    this.valid = valid;
+	    this.n = n;
+	}
+
+	@Override
+	public int size() {
+	    return n;
+	}
+
+	@Override
+	public double getX(int i) {
+	    return xs[i];
+	}
+
+	@Override
+	public double getY(int i) {
+	    return isValid(i) ? ys[i] : Double.NaN;
+	}
+
+	@Override
+	public boolean isValid(int i) {
+	    return (valid[i >>> 6] & (1L << i)) != 0;
+	}
+
+	@Override
+	public long version() {
+	    return n;
+	}
+    }
+}
@@ -3,22 +3,42 @@ package grapher.util;
 import java.awt.Color;
 
 /**
- * A small buffer class that stores points information and their color
+ * A small buffer class that stores points information and their color. The
+ * points are kept in a {@link grapher.util.PointSeries} so that large amount of
+ * points does not create large amount of objects.
  * 
  * @author Daniel Xu
  *
  */
 public class Buffer {
     private Color c;
-    private Point[] p;
+    private PointSeries p;
     private int s;
 
+    /** Appended points that are scanned rather than indexed again **/
+    private static final int MIN_TAIL = 4096;
+
+    /** Spatial index of the points, built when it is first needed **/
+    private volatile GridIndex index;
+
+    /** Version of the points when the index is built **/
+    private volatile long index_version;
+
     /**
      * @param p Array with Point
      * @param c Color of points
      * @param s Size of points
      */
     public Buffer(Point[] p, Color c, int s) {
+	this(PointSeries.of(p), c, s);
+    }
+
+    /**
+     * @param p Series of points
+     * @param c Color of points
+     * @param s Size of points
+     */
+    public Buffer(PointSeries p, Color c, int s) {
 	this.p = p;
 	this.c = c;
 	this.s = s;
@@ -28,11 +48,62 @@ public class Buffer {
 	return s;
     }
 
+    /**
+     * Get a copy of the points as an array of {@link grapher.util.Point}, use
+     * {@link #getSeries()} to access the points without copying
+     * 
+     * @return Array with Point
+     */
     public Point[] getPoints() {
+	return p.toPoints();
+    }
+
+    public PointSeries getSeries() {
 	return p;
     }
 
     public Color getColor() {
 	return c;
     }
+
+    /**
+     * Get the spatial index of the points, the index will be built the first time
+     * this method is called. The points of the index should be read from
+     * {@link GridIndex#getSeries()}.<br>
+     * Points that are appended to an {@link grapher.util.AppendableSeries} are
+     * added to the index as its tail, and the index is only built again once the
+     * tail is longer than an eighth of the indexed points, so a growing series is
+     * not indexed again every frame. Other series that are modified, such as
+     * {@link grapher.util.RingSeries}, replace their points all the time and are
+     * not indexed at all, they hold a limited number of points.
+     * 
+     * @return Spatial index of the points {@link grapher.util.GridIndex}, null if
+     *         the points are modified but not appended
+     */
+    public GridIndex getIndex() {
+	GridIndex i = index;
+	long v = p.version();
+	if (i != null && index_version == v) {
+	    return i;
+	}
+	if (v != 0 && !(p instanceof AppendableSeries)) {
+	    return null;
+	}
+	synchronized (this) {
+	    i = index;
+	    if (i == null || index_version != v) {
+		// Index a snapshot, so the points will not change while indexing
+		PointSeries s = p.snapshot();
+		GridIndex e = i == null ? null : i.extend(s);
+		if (e != null && e.tail() <= Math.max(MIN_TAIL, (s.size() - e.tail()) / 8)) {
+		    i = e;
+		} else {
+		    i = new GridIndex(s);
+		}
+		index_version = s.version();
+		index = i;
+	    }
+	}
+	return i;
+    }
 }
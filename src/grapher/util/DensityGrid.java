@@ -0,0 +1,148 @@
+package grapher.util;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * DensityGrid aggregates the points of a {@link grapher.util.PointSeries} into
+ * a grid that has one cell per pixel, each cell counts how many points fall
+ * into that pixel. The counts are then shaded into an image, the more points
+ * in a pixel, the more opaque the pixel will be. It is used when there are far
+ * more points than pixels, since drawing every point is slow and the result is
+ * saturated anyway.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class DensityGrid {
+
+    /** Series smaller than this will be binned in one thread **/
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** The lowest opacity of a pixel that has at least one point **/
+    private static final double MIN_ALPHA = 0.2;
+
+    /** Width and height of the grid in pixels **/
+    private int width, height;
+
+    /** Number of points in each pixel, row by row **/
+    private int[] counts;
+
+    /**
+     * Bin the points of the series into pixels. A point at (x,y) falls into the
+     * pixel (ox + x * sx, oy + y * sy), points outside of the grid are ignored.
+     * Large series are binned in parallel, each thread has its own grid and they
+     * are merged at the end.
+     * 
+     * @param series The series that will be binned
+     * @param width  Width of the grid in pixels
+     * @param height Height of the grid in pixels
+     * @param ox     x offset in pixels
+     * @param sx     Pixels of one unit on x axis
+     * @param oy     y offset in pixels
+     * @param sy     Pixels of one unit on y axis, negative if y goes up
+     */
+    public DensityGrid(PointSeries series, int width, int height, double ox, double sx, double oy, double sy) {
+	this.width = width;
+	this.height = height;
+	int n = series.size();
+	int threads = n < PARALLEL_THRESHOLD ? 1 : Runtime.getRuntime().availableProcessors();
+	counts = IntStream.range(0, threads).parallel()
+		.mapToObj(t -> bin(series, (int) ((long) n * t / threads), (int) ((long) n * (t + 1) / threads), ox,
+			sx, oy, sy))
+		.reduce((a, b) -> {
+		    for (int i = 0; i < a.length; i++) {
+			a[i] += b[i];
+		    }
+		    return a;
+		}).get();
+    }
+
+    // Bin the points from index start(included) to end(excluded) into a new grid
+    private int[] bin(PointSeries series, int start, int end, double ox, double sx, double oy, double sy) {
+	int[] grid = new int[width * height];
+	for (int i = start; i < end; i++) {
+	    if (series.isValid(i)) {
+		double px = Math.floor(ox + series.getX(i) * sx);
+		double py = Math.floor(oy + series.getY(i) * sy);
+		if (px >= 0 && px < width && py >= 0 && py < height) {
+		    grid[(int) py * width + (int) px]++;
+		}
+	    }
+	}
+	return grid;
+    }
+
+    /**
+     * Get the number of points in the given pixel
+     * 
+     * @param x x value of the pixel
+     * @param y y value of the pixel
+     * @return Number of points
+     */
+    public int count(int x, int y) {
+	return counts[y * width + x];
+    }
+
+    /**
+     * Shade the counts into an image with the given color. Pixels without points
+     * are transparent. With log shading, the opacity of a pixel grows with the
+     * logarithm of its count. With histogram equalization, the opacity grows with
+     * the rank of its count among all pixels that have points, so that every
+     * opacity is used by roughly the same number of pixels.
+     * 
+     * @param c      The color of the points
+     * @param eqhist True to use histogram equalization, false to use log shading
+     * @return An image that has the same size with the grid
+     */
+    public BufferedImage shade(Color c, boolean eqhist) {
+	BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+	int rgb = c.getRGB() & 0xFFFFFF;
+	int[] sorted = null;
+	double log_max = 0;
+	if (eqhist) {
+	    sorted = Arrays.stream(counts).filter(v -> v > 0).sorted().toArray();
+	} else {
+	    log_max = Math.log1p(Arrays.stream(counts).max().orElse(0));
+	}
+	// Cache the alpha of the last count, neighbour pixels often have the same
+	int last_count = -1;
+	int last_alpha = 0;
+	for (int i = 0; i < counts.length; i++) {
+	    int v = counts[i];
+	    if (v == 0) {
+		continue;
+	    }
+	    if (v != last_count) {
+		double t;
+		if (eqhist) {
+		    t = upper(sorted, v) / (double) sorted.length;
+		} else {
+		    t = log_max == 0 ? 1 : Math.log1p(v) / log_max;
+		}
+		last_count = v;
+		last_alpha = (int) Math.round(255 * (MIN_ALPHA + (1 - MIN_ALPHA) * t));
+	    }
+	    pixels[i] = (last_alpha << 24) | rgb;
+	}
+	return img;
+    }
+
+    // Number of elements in the sorted array that are less than or equal to v
+    private static int upper(int[] sorted, int v) {
+	int lo = 0, hi = sorted.length;
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (sorted[mid] <= v) {
+		lo = mid + 1;
+	    } else {
+		hi = mid;
+	    }
+	}
+	return lo;
+    }
+}
@@ -0,0 +1,77 @@
+package grapher.util;
+
+import java.util.BitSet;
+
+/**
+ * A {@link grapher.util.PointSeries} that stores x and y values in two double
+ * arrays, and uses a bitset to remember which points are valid.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class DoubleSeries extends PointSeries {
+
+    /** x and y values **/
+    private double[] xs, ys;
+
+    /** Set bit means the point at that index is valid **/
+    private BitSet valid;
+
+    /**
+     * Construct the series with x and y values. Points that have Double.NaN as y
+     * value will be marked as invalid. The arrays are not copied, therefore,
+     * modifying them later will affect the series.
+     * 
+     * @param xs x values
+     * @param ys y values, must have the same length with xs
+     */
+    public DoubleSeries(double[] xs, double[] ys) {
+	this(xs, ys, null);
+    }
+
+    /**
+     * Construct the series with x and y values and a bitset that indicates which
+     * points are valid. If the bitset is null, points that have Double.NaN as y
+     * value will be marked as invalid
+     * 
+     * @param xs    x values
+     * @param ys    y values, must have the same length with xs
+     * @param valid Set bit means the point at that index is valid
+     */
+    public DoubleSeries(double[] xs, double[] ys, BitSet valid) {
+	if (xs.length != ys.length) {
+	    throw new IllegalArgumentException("Length of x values and y values must be the same");
+	}
+	this.xs = xs;
+	this.ys = ys;
+	if (valid == null) {
+	    valid = new BitSet(xs.length);
+	    for (int i = 0; i < ys.length; i++) {
+		if (!Double.isNaN(ys[i])) {
+		    valid.set(i);
+		}
+	    }
+	}
+	this.valid = valid;
+    }
+
+    @Override
+    public int size() {
+	return xs.length;
+    }
+
+    @Override
+    public double getX(int i) {
+	return xs[i];
+    }
+
+    @Override
+    public double getY(int i) {
+	return valid.get(i) ? ys[i] : Double.NaN;
+    }
+
+    @Override
+    public boolean isValid(int i) {
+	return valid.get(i);
+    }
+}
@@ -1,8 +1,12 @@
 package grapher.util;
 
 import java.awt.Color;
+import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import common.events.SampleEvent;
 import util.Evaluator;
 
 /**
@@ -20,6 +24,15 @@ public class Expression {
     /** Function color **/
     private Color func_color;
 
+    /** Max number of densities whose samples are cached **/
+    private static final int CACHED_DENSITIES = 2;
+
+    /**
+     * The last evaluated samples of each density, see
+     * {@link #sample(int, int, int)}
+     **/
+    private final Map<Integer, Slot> samples = new ConcurrentHashMap<Integer, Slot>();
+
     /**
      * Setup the expression by providing it in string format. The expression has
      * some restrictions(see {@link util.Evaluator#evaluate(String)}) and must
@@ -90,27 +103,148 @@ public class Expression {
      *         length will be (max-min)*density
      */
     public Point[] getPoints(int min, int max, int density) {
-	Point[] pts;
+	return sample(min, max, density).toPoints();
+    }
+
+    /**
+     * Evaluate number of points of a function and store them in a
+     * {@link grapher.util.PointSeries}. It evaluates the same points as
+     * {@link #getPoints(int, int, int)}, the points that cannot be evaluated will
+     * be marked as invalid in the series. The samples of the last call of each
+     * density are cached, calling it again with the same arguments returns the
+     * same series. If the thread is interrupted, the evaluation stops and a
+     * CancellationException is thrown, so stale renderings do not keep
+     * evaluating
+     * 
+     * @param min     The min value on x axis, must be an integer
+     * @param max     The max value on x axis, must be an integer
+     * @param density The number of points that will be evaluated between two units
+     * @return A series that contains points of a function in range(min, max), the
+     *         size will be (max-min)*density
+     */
+    public PointSeries sample(int min, int max, int density) {
+	Slot slot = samples.get(density);
+	if (slot == null) {
+	    if (samples.size() >= CACHED_DENSITIES) {
+		samples.clear();
+	    }
+	    slot = samples.computeIfAbsent(density, d -> new Slot());
+	}
+	Samples cached = slot.samples;
+	if (cached != null && cached.min == min && cached.max == max) {
+	    return cached.series;
+	}
+	// Only one thread evaluates each density, others rendering in parallel wait
+	// for it, but drafts of lower densities do not wait for the full samples
+	synchronized (slot) {
+	    cached = slot.samples;
+	    if (cached != null && cached.min == min && cached.max == max) {
+		return cached.series;
+	    }
+	    PointSeries series = evaluate(min, max, density);
+	    slot.samples = new Samples(min, max, series);
+	    return series;
+	}
+    }
+
+    /**
+     * Get the y value of the function at x by interpolating the samples of
+     * {@link #sample(int, int, int)} linearly, it is much faster than evaluating
+     * the expression. The samples will be evaluated if they are not cached yet.
+     * 
+     * @param x       x value
+     * @param min     The min value on x axis of the samples
+     * @param max     The max value on x axis of the samples
+     * @param density The number of points that being evaluated between two units
+     * @return The interpolated y value, Double.NaN if x is out of the range or the
+     *         function does not exist around x
+     */
+    public double interpolate(double x, int min, int max, int density) {
+	return interpolate(sample(min, max, density), x, min, density);
+    }
+
+    /**
+     * Get the y value of the function at x by interpolating the samples like
+     * {@link #interpolate(double, int, int, int)}, but the samples are never
+     * evaluated, so it can be called on the event dispatch thread while the
+     * samples are evaluated in background
+     * 
+     * @param x       x value
+     * @param min     The min value on x axis of the samples
+     * @param max     The max value on x axis of the samples
+     * @param density The number of points that being evaluated between two units
+     * @return The interpolated y value, Double.NaN if the samples are not
+     *         evaluated yet, x is out of the range or the function does not exist
+     *         around x
+     */
+    public double interpolate_sampled(double x, int min, int max, int density) {
+	Slot slot = samples.get(density);
+	Samples cached = slot == null ? null : slot.samples;
+	if (cached == null || cached.min != min || cached.max != max) {
+	    return Double.NaN;
+	}
+	return interpolate(cached.series, x, min, density);
+    }
+
+    // Interpolate the evenly distributed samples linearly
+    private static double interpolate(PointSeries s, double x, int min, int density) {
+	if (s.size() < 2 || x < s.getX(0) || x > s.getX(s.size() - 1)) {
+	    return Double.NaN;
+	}
+	// Samples are evenly distributed, the index can be calculated directly
+	int i = (int) ((x - min) * density);
+	i = Math.max(0, Math.min(s.size() - 2, i));
+	while (i > 0 && s.getX(i) > x) {
+	    i--;
+	}
+	while (i < s.size() - 2 && s.getX(i + 1) < x) {
+	    i++;
+	}
+	if (!s.isValid(i) || !s.isValid(i + 1)) {
+	    return Double.NaN;
+	}
+	double x0 = s.getX(i), x1 = s.getX(i + 1);
+	double t = x1 == x0 ? 0 : (x - x0) / (x1 - x0);
+	return s.getY(i) + t * (s.getY(i + 1) - s.getY(i));
+    }
+
+    // Evaluate the points of the function
+    private PointSeries evaluate(int min, int max, int density) {
+	SampleEvent event = new SampleEvent();
+	event.begin();
+	event.density = density;
 	// The number of units for x-axis and y-axis
 	int unit = max - min;
 	density = density * unit;
-	pts = new Point[density];
+	double[] xs = new double[density];
+	double[] ys = new double[density];
 	float step = unit / (float) density;
 	// Setup points
 	for (int i = 0; i < density; i++) {
+	    if ((i & 63) == 0 && Thread.currentThread().isInterrupted()) {
+		throw new CancellationException("Evaluation is interrupted");
+	    }
 	    float x = min + i * step;
-	    Point p = null;
+	    xs[i] = x;
 	    try {
-		p = new Point();
-		p.x = x;
-		p.y = Evaluator.evaluate(exp.replace("x", "(" + String.valueOf(x) + ")"));
-		pts[i] = p;
+		ys[i] = Evaluator.evaluate(exp.replace("x", "(" + String.valueOf(x) + ")"));
 	    } catch (UnsupportedOperationException e) {
-		p = new InvalidPoint(x);
-		pts[i] = p;
+		ys[i] = Double.NaN;
 	    }
 	}
-	return pts;
+	if (event.shouldCommit()) {
+	    event.expression = exp;
+	    event.min = min;
+	    event.max = max;
+	    event.samples = density;
+	    for (double y : ys) {
+		if (Double.isNaN(y)) {
+		    event.invalid++;
+		}
+	    }
+	    event.commit();
+	}
+	return new DoubleSeries(xs, ys);
     }
 
     /**
@@ -153,4 +287,21 @@ public class Expression {
     public String toString() {
 	return exp;
     }
+
+    // The last evaluated samples of a density
+    private static class Slot {
+	private volatile Samples samples;
+    }
+
+    // Evaluated samples and the range that produces them
+    private static class Samples {
+	private int min, max;
+	private PointSeries series;
+
+	private Samples(int min, int max, PointSeries series) {
+	    this.min = min;
+	    this.max = max;
+	    this.series = series;
+	}
+    }
 }
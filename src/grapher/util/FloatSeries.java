@@ -0,0 +1,82 @@
+package grapher.util;
+
+import java.util.BitSet;
+
+/**
+ * A {@link grapher.util.PointSeries} that stores x and y values in two float
+ * arrays, it takes half of the memory of {@link grapher.util.DoubleSeries} but
+ * the values only have float precision. Please notice that the values will be
+ * converted from double to float if they are provided in double.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class FloatSeries extends PointSeries {
+
+    /** x and y values **/
+    private float[] xs, ys;
+
+    /** Set bit means the point at that index is valid **/
+    private BitSet valid;
+
+    /**
+     * Construct the series with x and y values. Points that have Float.NaN as y
+     * value will be marked as invalid. The arrays are not copied, therefore,
+     * modifying them later will affect the series.
+     * 
+     * @param xs x values
+     * @param ys y values, must have the same length with xs
+     */
+    public FloatSeries(float[] xs, float[] ys) {
+	if (xs.length != ys.length) {
+	    throw new IllegalArgumentException("Length of x values and y values must be the same");
+	}
+	this.xs = xs;
+	this.ys = ys;
+	valid = new BitSet(xs.length);
+	for (int i = 0; i < ys.length; i++) {
+	    if (!Float.isNaN(ys[i])) {
+		valid.set(i);
+	    }
+	}
+    }
+
+    /**
+     * Construct the series by converting the points of another series to float
+     * 
+     * @param series The series that will be converted
+     */
+    public FloatSeries(PointSeries series) {
+	int n = series.size();
+	xs = new float[n];
+	ys = new float[n];
+	valid = new BitSet(n);
+	for (int i = 0; i < n; i++) {
+	    xs[i] = (float) series.getX(i);
+	    ys[i] = (float) series.getY(i);
+	    if (series.isValid(i)) {
+		valid.set(i);
+	    }
+	}
+    }
+
+    @Override
+    public int size() {
+	return xs.length;
+    }
+
+    @Override
+    public double getX(int i) {
+	return xs[i];
+    }
+
+    @Override
+    public double getY(int i) {
+	return valid.get(i) ? ys[i] : Double.NaN;
+    }
+
+    @Override
+    public boolean isValid(int i) {
+	return valid.get(i);
+    }
+}
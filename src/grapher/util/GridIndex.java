@@ -0,0 +1,383 @@
+package grapher.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * GridIndex is a spatial index of a {@link grapher.util.PointSeries}. It
+ * divides the bounds of the series into a uniform grid, and remembers which
+ * points are in each cell. Therefore, a rectangular range query only needs to
+ * visit the cells that overlap with the range instead of every point in the
+ * series. Invalid points are not indexed.<br>
+ * The index is built once and does not change, it has to be rebuilt if the
+ * series is modified, therefore, it should be built from
+ * {@link grapher.util.PointSeries#snapshot()}. Points that are appended after
+ * the index is built can be added as a tail that is scanned, see
+ * {@link #extend(PointSeries)}.<br>
+ * The index takes 4 bytes of heap for each point and at most 4MB for the
+ * cells. The number of cells is limited, so cells hold more points as the
+ * series grows, and series of tens of millions of points are still indexed.
+ * Points of a {@link grapher.util.MappedSeries} are not meant to be on heap, so
+ * it is indexed by blocks of consecutive points instead, only the bounds of
+ * each block are kept, at most {@link #MAX_BLOCKS} of them. Blocks are only
+ * skipped if their bounds do not overlap, so the points of the file should be
+ * in an order that keeps close points together, such as sorted by x.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class GridIndex {
+
+    /** Max number of blocks that a mapped series is divided into **/
+    public static final int MAX_BLOCKS = 1 << 16;
+
+    /** Min number of points in one block of a mapped series **/
+    private static final int MIN_BLOCK = 256;
+
+    /** Average number of points in one cell **/
+    private static final int POINTS_PER_CELL = 4;
+
+    /**
+     * Max number of cells on each side of the grid, larger series have more
+     * points in each cell
+     **/
+    private static final int MAX_CELLS = 1024;
+
+    /** The series that being indexed, including the tail **/
+    private PointSeries series;
+
+    /** Number of points from the start of the series that are indexed **/
+    private int indexed;
+
+    /** Bounds of the grid, {min x, max x, min y, max y} **/
+    private double[] bounds;
+
+    /** Number of columns and rows of the grid **/
+    private int cols, rows;
+
+    /** Size of a cell **/
+    private double cell_w, cell_h;
+
+    /**
+     * Points in cell i are order[start[i]] to order[start[i+1]-1], cells are
+     * stored row by row
+     **/
+    private int[] start, order;
+
+    /** Number of points in a block, 0 if the points are in the grid **/
+    private int block;
+
+    /** Bounds of the blocks, 4 values for each block as the bounds of the grid **/
+    private double[] blocks;
+
+    /**
+     * Build the index of the given series
+     * 
+     * @param series The series that will be indexed
+     */
+    public GridIndex(PointSeries series) {
+	this.series = series;
+	int n = series.size();
+	indexed = n;
+	if (series instanceof MappedSeries) {
+	    index_blocks(n);
+	    return;
+	}
+	bounds = series.bounds(n);
+	if (Double.isNaN(bounds[0])) {
+	    cols = rows = 0;
+	    start = new int[1];
+	    order = new int[0];
+	    return;
+	}
+	int side = (int) Math.ceil(Math.sqrt(n / (double) POINTS_PER_CELL));
+	side = Math.max(1, Math.min(side, MAX_CELLS));
+	cols = bounds[1] > bounds[0] ? side : 1;
+	rows = bounds[3] > bounds[2] ? side : 1;
+	cell_w = (bounds[1] - bounds[0]) / cols;
+	cell_h = (bounds[3] - bounds[2]) / rows;
+	// Counting sort the points by their cells
+	start = new int[cols * rows + 1];
+	for (int i = 0; i < n; i++) {
+	    if (series.isValid(i)) {
+		start[cell(series.getX(i), series.getY(i)) + 1]++;
+	    }
+	}
+	for (int i = 1; i < start.length; i++) {
+	    start[i] += start[i - 1];
+	}
+	order = new int[start[start.length - 1]];
+	int[] next = Arrays.copyOf(start, start.length - 1);
+	for (int i = 0; i < n; i++) {
+	    if (series.isValid(i)) {
+		order[next[cell(series.getX(i), series.getY(i))]++] = i;
+	    }
+	}
+    }
+
+    // An index that shares the indexed points with another index
+    private GridIndex(GridIndex index, PointSeries series) {
+	this.series = series;
+	indexed = index.indexed;
+	bounds = index.bounds;
+	cols = index.cols;
+	rows = index.rows;
+	cell_w = index.cell_w;
+	cell_h = index.cell_h;
+	start = index.start;
+	order = index.order;
+	block = index.block;
+	blocks = index.blocks;
+    }
+
+    // Divide the points into blocks and keep the bounds of each block
+    private void index_blocks(int n) {
+	block = Math.max(MIN_BLOCK, (int) Math.ceil(n / (double) MAX_BLOCKS));
+	int count = (n + block - 1) / block;
+	blocks = new double[count * 4];
+	for (int b = 0; b < count; b++) {
+	    double[] bb = series.bounds(b * block, Math.min(n, (b + 1) * block));
+	    System.arraycopy(bb, 0, blocks, b * 4, 4);
+	}
+    }
+
+    /**
+     * Get an index of a series that has the points of the indexed series at the
+     * start and more points appended after them, such as a newer snapshot of
+     * {@link grapher.util.AppendableSeries}. The indexed points are shared, the
+     * appended points are the tail, which is scanned by every query, so the index
+     * should be built again once the tail is long, see {@link #tail()}.
+     * 
+     * @param series The series with the appended points
+     * @return The index of the series
+     */
+    public GridIndex extend(PointSeries series) {
+	return new GridIndex(this, series);
+    }
+
+    /**
+     * Get the number of points at the end of the series that are not indexed and
+     * are scanned by every query, see {@link #extend(PointSeries)}
+     * 
+     * @return Number of points in the tail
+     */
+    public int tail() {
+	return series.size() - indexed;
+    }
+
+    /**
+     * Get the series that being indexed
+     * 
+     * @return The series
+     */
+    public PointSeries getSeries() {
+	return series;
+    }
+
+    /**
+     * Visit every valid point that is inside the given range, the bounds of the
+     * range are included. The points are not visited in the order of the series.
+     * 
+     * @param x_min   The min x value of the range
+     * @param x_max   The max x value of the range
+     * @param y_min   The min y value of the range
+     * @param y_max   The max y value of the range
+     * @param visitor Receives the index of each point in the series
+     */
+    public void query(double x_min, double x_max, double y_min, double y_max, IntConsumer visitor) {
+	if (block > 0) {
+	    for (int b = 0; b * 4 < blocks.length; b++) {
+		int k = b * 4;
+		if (Double.isNaN(blocks[k]) || x_min > blocks[k + 1] || x_max < blocks[k] || y_min > blocks[k + 3]
+			|| y_max < blocks[k + 2]) {
+		    continue;
+		}
+		// Points of a block inside the range do not need to be checked
+		boolean check = blocks[k] < x_min || blocks[k + 1] > x_max || blocks[k + 2] < y_min
+			|| blocks[k + 3] > y_max;
+		scan(b * block, Math.min(indexed, (b + 1) * block), check, x_min, x_max, y_min, y_max, visitor);
+	    }
+	} else if (order.length > 0 && x_min <= bounds[1] && x_max >= bounds[0] && y_min <= bounds[3]
+		&& y_max >= bounds[2]) {
+	    int c0 = col(x_min), c1 = col(x_max);
+	    int r0 = row(y_min), r1 = row(y_max);
+	    for (int r = r0; r <= r1; r++) {
+		for (int c = c0; c <= c1; c++) {
+		    int cell = r * cols + c;
+		    // Only the cells on the border of the range need to be checked
+		    boolean check = r == r0 || r == r1 || c == c0 || c == c1;
+		    for (int k = start[cell]; k < start[cell + 1]; k++) {
+			int i = order[k];
+			if (!check) {
+			    visitor.accept(i);
+			} else {
+			    double x = series.getX(i);
+			    double y = series.getY(i);
+			    if (x >= x_min && x <= x_max && y >= y_min && y <= y_max) {
+				visitor.accept(i);
+			    }
+			}
+		    }
+		}
+	    }
+	}
+	scan(indexed, series.size(), true, x_min, x_max, y_min, y_max, visitor);
+    }
+
+    // Visit the valid points from start to end that are inside the range, they
+    // are only checked if necessary
+    private void scan(int start, int end, boolean check, double x_min, double x_max, double y_min, double y_max,
+	    IntConsumer visitor) {
+	for (int i = start; i < end; i++) {
+	    if (series.isValid(i)) {
+		if (!check) {
+		    visitor.accept(i);
+		} else {
+		    double x = series.getX(i);
+		    double y = series.getY(i);
+		    if (x >= x_min && x <= x_max && y >= y_min && y <= y_max) {
+			visitor.accept(i);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Find all valid points that are inside the given range, the bounds of the
+     * range are included.
+     * 
+     * @param x_min The min x value of the range
+     * @param x_max The max x value of the range
+     * @param y_min The min y value of the range
+     * @param y_max The max y value of the range
+     * @return Indices of the points in the series, in ascending order
+     */
+    public int[] range(double x_min, double x_max, double y_min, double y_max) {
+	int[][] found = new int[][] { new int[16] };
+	int[] count = new int[1];
+	query(x_min, x_max, y_min, y_max, i -> {
+	    if (count[0] == found[0].length) {
+		found[0] = Arrays.copyOf(found[0], count[0] * 2);
+	    }
+	    found[0][count[0]++] = i;
+	});
+	int[] result = Arrays.copyOf(found[0], count[0]);
+	Arrays.sort(result);
+	return result;
+    }
+
+    /**
+     * Find the valid point that is closest to the given location. The distance is
+     * measured after scaling the x and y differences by sx and sy, so that the
+     * closest point in pixels can be found by passing the pixel ratios of the
+     * axis. Only the cells around the location, or the blocks that are close
+     * enough, are visited.
+     * 
+     * @param x   x value of the location
+     * @param y   y value of the location
+     * @param sx  Scale of the x difference
+     * @param sy  Scale of the y difference
+     * @param max Max scaled distance, points that are further than it are ignored
+     * @return Index of the closest point in the series, -1 if there is no point
+     *         within the max distance
+     */
+    public int nearest(double x, double y, double sx, double sy, double max) {
+	double[] best = new double[] { -1, max * max };
+	if (block > 0) {
+	    for (int b = 0; b * 4 < blocks.length; b++) {
+		int k = b * 4;
+		if (Double.isNaN(blocks[k])) {
+		    continue;
+		}
+		// Every point of the block is at least this far away
+		double dx = Math.max(0, Math.max(blocks[k] - x, x - blocks[k + 1])) * sx;
+		double dy = Math.max(0, Math.max(blocks[k + 2] - y, y - blocks[k + 3])) * sy;
+		if (dx * dx + dy * dy <= best[1]) {
+		    closest(b * block, Math.min(indexed, (b + 1) * block), x, y, sx, sy, best);
+		}
+	    }
+	} else if (order.length > 0) {
+	    nearest_cells(x, y, sx, sy, best);
+	}
+	closest(indexed, series.size(), x, y, sx, sy, best);
+	return (int) best[0];
+    }
+
+    // Find the closest point in the cells around the location, best is {index,
+    // squared distance} of the closest point found so far
+    private void nearest_cells(double x, double y, double sx, double sy, double[] best) {
+	int c = col(x), r = row(y);
+	for (int ring = 0;; ring++) {
+	    // Visit the cells on the border of the ring
+	    for (int rr = Math.max(0, r - ring); rr <= Math.min(rows - 1, r + ring); rr++) {
+		boolean edge_row = rr == r - ring || rr == r + ring;
+		for (int cc = Math.max(0, c - ring); cc <= Math.min(cols - 1, c + ring); cc++) {
+		    if (!edge_row && cc != c - ring && cc != c + ring) {
+			continue;
+		    }
+		    int cell = rr * cols + cc;
+		    for (int k = start[cell]; k < start[cell + 1]; k++) {
+			int i = order[k];
+			double dx = (series.getX(i) - x) * sx;
+			double dy = (series.getY(i) - y) * sy;
+			double d = dx * dx + dy * dy;
+			if (d <= best[1]) {
+			    best[1] = d;
+			    best[0] = i;
+			}
+		    }
+		}
+	    }
+	    // Every point outside of the visited cells is at least this far away
+	    double left = c - ring <= 0 ? Double.NEGATIVE_INFINITY : bounds[0] + (c - ring) * cell_w;
+	    double right = c + ring >= cols - 1 ? Double.POSITIVE_INFINITY : bounds[0] + (c + ring + 1) * cell_w;
+	    double bottom = r - ring <= 0 ? Double.NEGATIVE_INFINITY : bounds[2] + (r - ring) * cell_h;
+	    double top = r + ring >= rows - 1 ? Double.POSITIVE_INFINITY : bounds[2] + (r + ring + 1) * cell_h;
+	    double bound = Math.min(Math.min((x - left) * sx, (right - x) * sx),
+		    Math.min((y - bottom) * sy, (top - y) * sy));
+	    if (bound == Double.POSITIVE_INFINITY || bound * bound > best[1]) {
+		return;
+	    }
+	}
+    }
+
+    // Find the closest valid point from start to end, best is {index, squared
+    // distance} of the closest point found so far
+    private void closest(int start, int end, double x, double y, double sx, double sy, double[] best) {
+	for (int i = start; i < end; i++) {
+	    if (series.isValid(i)) {
+		double dx = (series.getX(i) - x) * sx;
+		double dy = (series.getY(i) - y) * sy;
+		double d = dx * dx + dy * dy;
+		if (d <= best[1]) {
+		    best[1] = d;
+		    best[0] = i;
+		}
+	    }
+	}
+    }
+
+    // The cell that contains the given location
+    private int cell(double x, double y) {
+	return row(y) * cols + col(x);
+    }
+
+    // The column that contains the given x value, clamped into the grid
+    private int col(double x) {
+	if (cols <= 1) {
+	    return 0;
+	}
+	int c = (int) ((x - bounds[0]) / cell_w);
+	return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    // The row that contains the given y value, clamped into the grid
+    private int row(double y) {
+	if (rows <= 1) {
+	    return 0;
+	}
+	int r = (int) ((y - bounds[2]) / cell_h);
+	return Math.max(0, Math.min(rows - 1, r));
+    }
+}
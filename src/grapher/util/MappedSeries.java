@@ -0,0 +1,118 @@
+package grapher.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link grapher.util.PointSeries} that reads its points from a memory-mapped
+ * file instead of the heap. The file is mapped by <code>FileChannel.map</code>,
+ * so the operating system loads the pages only when they are being accessed
+ * and the series can be much larger than the heap. Opening a file is almost
+ * free no matter how large the file is.<br>
+ * The file is a sequence of points without any header, each point takes 16
+ * bytes, x value followed by y value, both are little-endian doubles. A point
+ * that has Double.NaN as y value is invalid. Use
+ * {@link #write(String, PointSeries)} to create such file.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class MappedSeries extends PointSeries {
+
+    /** Number of bytes of one point **/
+    public static final int POINT_BYTES = 16;
+
+    /** Each mapped region is 1GB, which is a multiple of POINT_BYTES **/
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    /** Mapped regions of the file **/
+    private MappedByteBuffer[] regions;
+
+    /** Number of points **/
+    private int size;
+
+    /**
+     * Map the given file as a series of points. The file is mapped as read only,
+     * modifying the file afterwards may result undefined values.
+     * 
+     * @param file File location
+     * @throws IOException If the file cannot be mapped
+     */
+    public MappedSeries(String file) throws IOException {
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+	    long length = channel.size();
+	    if (length % POINT_BYTES != 0) {
+		throw new IOException("File length must be a multiple of " + POINT_BYTES + " bytes");
+	    }
+	    if (length / POINT_BYTES > Integer.MAX_VALUE) {
+		throw new IOException("File contains too many points");
+	    }
+	    size = (int) (length / POINT_BYTES);
+	    regions = new MappedByteBuffer[(int) ((length + REGION_MASK) >>> REGION_SHIFT)];
+	    for (int i = 0; i < regions.length; i++) {
+		long start = (long) i << REGION_SHIFT;
+		regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << REGION_SHIFT));
+		regions[i].order(ByteOrder.LITTLE_ENDIAN);
+	    }
+	}
+    }
+
+    @Override
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public double getX(int i) {
+	long offset = (long) i * POINT_BYTES;
+	return regions[(int) (offset >>> REGION_SHIFT)].getDouble((int) (offset & REGION_MASK));
+    }
+
+    @Override
+    public double getY(int i) {
+	long offset = (long) i * POINT_BYTES + 8;
+	return regions[(int) (offset >>> REGION_SHIFT)].getDouble((int) (offset & REGION_MASK));
+    }
+
+    @Override
+    public boolean isValid(int i) {
+	return !Double.isNaN(getY(i));
+    }
+
+    /**
+     * Write a series to the given file in the format that can be mapped by
+     * {@link grapher.util.MappedSeries}. If the file does not exist, a new file
+     * will be created, otherwise the file will be overwritten.
+     * 
+     * @param file   File location
+     * @param series The series that will be written
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(String file, PointSeries series) throws IOException {
+	try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+		StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    ByteBuffer buf = ByteBuffer.allocateDirect(POINT_BYTES * 4096).order(ByteOrder.LITTLE_ENDIAN);
+	    for (int i = 0; i < series.size(); i++) {
+		buf.putDouble(series.getX(i));
+		buf.putDouble(series.getY(i));
+		if (!buf.hasRemaining()) {
+		    buf.flip();
+		    while (buf.hasRemaining()) {
+			channel.write(buf);
+		    }
+		    buf.clear();
+		}
+	    }
+	    buf.flip();
+	    while (buf.hasRemaining()) {
+		channel.write(buf);
+	    }
+	}
+    }
+}
@@ -0,0 +1,173 @@
+package grapher.util;
+
+/**
+ * PointSeries is a sequence of points that is stored in primitive arrays rather
+ * than an array of {@link grapher.util.Point} objects. Each point is identified
+ * by its index, and the x,y values are read by {@link #getX(int)} and
+ * {@link #getY(int)}. A point that cannot be drawn, the same as
+ * {@link grapher.util.InvalidPoint}, is marked as invalid and
+ * {@link #isValid(int)} will return false for it.<br>
+ * Subclasses decide how the values are actually stored, see
+ * {@link grapher.util.DoubleSeries}, {@link grapher.util.FloatSeries},
+ * {@link grapher.util.MappedSeries}, {@link grapher.util.AppendableSeries} and
+ * {@link grapher.util.RingSeries}.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public abstract class PointSeries {
+
+    /**
+     * Get the number of points in the series
+     * 
+     * @return Number of points
+     */
+    public abstract int size();
+
+    /**
+     * Get the x value of the point at the given index
+     * 
+     * @param i Index of the point
+     * @return x value
+     */
+    public abstract double getX(int i);
+
+    /**
+     * Get the y value of the point at the given index, the y value of an invalid
+     * point is always Double.NaN
+     * 
+     * @param i Index of the point
+     * @return y value
+     */
+    public abstract double getY(int i);
+
+    /**
+     * Check if the point at the given index is valid or not
+     * 
+     * @param i Index of the point
+     * @return True if the point can be drawn, false otherwise
+     */
+    public abstract boolean isValid(int i);
+
+    /**
+     * Get the version of the series, the version changes every time the series is
+     * modified. Things that are computed from the series, such as
+     * {@link grapher.util.GridIndex}, should be computed again when the version
+     * changes. The version of a series that cannot be modified is always 0.
+     * 
+     * @return Version of the series
+     */
+    public long version() {
+	return 0;
+    }
+
+    /**
+     * Get a series that contains the current points and will not change even if
+     * this series is modified later. Readers that run in other threads, such as
+     * rendering, should read the snapshot instead of the series itself. A series
+     * that cannot be modified returns itself.
+     * 
+     * @return A series that will not change
+     */
+    public PointSeries snapshot() {
+	return this;
+    }
+
+    /**
+     * Get the point at the given index as a {@link grapher.util.Point} object, a
+     * new object will be created every time this method is called
+     * 
+     * @param i Index of the point
+     * @return {@link grapher.util.Point} or {@link grapher.util.InvalidPoint}
+     */
+    public Point getPoint(int i) {
+	if (isValid(i)) {
+	    return new Point(getX(i), getY(i));
+	}
+	return new InvalidPoint(getX(i));
+    }
+
+    /**
+     * Copy all the points in the series to an array of
+     * {@link grapher.util.Point}. This is only for compatibility, since every
+     * point will become a separate object
+     * 
+     * @return Array that contains all points of the series
+     */
+    public Point[] toPoints() {
+	Point[] p = new Point[size()];
+	for (int i = 0; i < p.length; i++) {
+	    p[i] = getPoint(i);
+	}
+	return p;
+    }
+
+    /**
+     * Get the bounds of all valid points in the series. The values are read one
+     * by one, no point object will be created.
+     * 
+     * @return An array that contains {min x, max x, min y, max y}, all of them
+     *         will be Double.NaN if there is no valid point
+     */
+    public double[] bounds() {
+	return bounds(size());
+    }
+
+    /**
+     * Get the bounds of the valid points among the first n points in the series.
+     * 
+     * @param n Number of points, from the start of the series
+     * @return An array that contains {min x, max x, min y, max y}, all of them
+     *         will be Double.NaN if there is no valid point
+     */
+    public double[] bounds(int n) {
+	return bounds(0, n);
+    }
+
+    /**
+     * Get the bounds of the valid points from index start(included) to
+     * end(excluded).
+     * 
+     * @param start Index of the first point, included
+     * @param end   Index of the last point, excluded
+     * @return An array that contains {min x, max x, min y, max y}, all of them
+     *         will be Double.NaN if there is no valid point
+     */
+    public double[] bounds(int start, int end) {
+	double[] b = new double[] { Double.NaN, Double.NaN, Double.NaN, Double.NaN };
+	for (int i = start; i < end; i++) {
+	    if (isValid(i)) {
+		double x = getX(i);
+		double y = getY(i);
+		if (Double.isNaN(b[0])) {
+		    b[0] = b[1] = x;
+		    b[2] = b[3] = y;
+		} else {
+		    b[0] = Math.min(b[0], x);
+		    b[1] = Math.max(b[1], x);
+		    b[2] = Math.min(b[2], y);
+		    b[3] = Math.max(b[3], y);
+		}
+	    }
+	}
+	return b;
+    }
+
+    /**
+     * Create a series from an array of {@link grapher.util.Point}. Every
+     * {@link grapher.util.InvalidPoint} or point with Double.NaN as y value will be
+     * marked as invalid
+     * 
+     * @param points Array of points
+     * @return A series backed by double arrays
+     */
+    public static PointSeries of(Point... points) {
+	double[] xs = new double[points.length];
+	double[] ys = new double[points.length];
+	for (int i = 0; i < points.length; i++) {
+	    xs[i] = points[i].x;
+	    ys[i] = points[i] instanceof InvalidPoint ? Double.NaN : points[i].y;
+	}
+	return new DoubleSeries(xs, ys);
+    }
+}
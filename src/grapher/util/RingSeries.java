@@ -0,0 +1,156 @@
+package grapher.util;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link grapher.util.PointSeries} that only keeps the latest points. The
+ * points are stored in preallocated arrays with a fixed capacity, once the
+ * series is full, every new point replaces the oldest point. Therefore, it
+ * never grows no matter how long the data keeps coming.<br>
+ * The series allows one producer thread to append points while other threads
+ * are reading, without any lock. Readers should call {@link #snapshot()} to get
+ * a consistent copy of the points, reading the series directly while points are
+ * being appended may mix old and new points.
+ * 
+ * @author Daniel Xu
+ *
+ */
+public class RingSeries extends PointSeries {
+
+    /** x and y values, the slot of point n is n % capacity **/
+    private final double[] xs, ys;
+
+    /** Number of points that have ever been appended **/
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Number of points that have ever been started to be written, it is one more
+     * than head while a point is being appended
+     **/
+    private final AtomicLong writing = new AtomicLong();
+
+    /**
+     * Construct an empty series that keeps at most the given number of points
+     * 
+     * @param capacity Max number of points, minimum value should be 1
+     */
+    public RingSeries(int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("Capacity must be greater than 0");
+	}
+	xs = new double[capacity];
+	ys = new double[capacity];
+    }
+
+    /**
+     * Append a point, the oldest point will be replaced if the series is full.
+     * Only one thread is allowed to append points.
+     * 
+     * @param x x value
+     * @param y y value, Double.NaN means the point is invalid
+     */
+    public void append(double x, double y) {
+	long h = head.get();
+	int slot = (int) (h % xs.length);
+	// Mark the slot before it is changed, so readers know it is overwritten
+	writing.set(h + 1);
+	VarHandle.storeStoreFence();
+	xs[slot] = x;
+	ys[slot] = y;
+	// Publish the point after it is written
+	head.lazySet(h + 1);
+    }
+
+    /**
+     * Append a point that uses the number of points appended before as its x
+     * value, it is convenient when the x value does not matter.
+     * 
+     * @param y y value, Double.NaN means the point is invalid
+     */
+    public void append(double y) {
+	append(head.get(), y);
+    }
+
+    /**
+     * Get the x value of the latest point
+     * 
+     * @return x value of the latest point, Double.NaN if the series is empty
+     */
+    public double getLatestX() {
+	long h = head.get();
+	return h == 0 ? Double.NaN : xs[(int) ((h - 1) % xs.length)];
+    }
+
+    /**
+     * Get the max number of points that the series keeps
+     * 
+     * @return Capacity of the series
+     */
+    public int capacity() {
+	return xs.length;
+    }
+
+    /**
+     * Copy the points that the series currently keeps, from the oldest to the
+     * latest. Points that are replaced by the producer during copying are
+     * dropped, so the copy is always consistent.
+     * 
+     * @return A series that will not change
+     */
+    @Override
+    public PointSeries snapshot() {
+	long end = head.get();
+	long begin = Math.max(0, end - xs.length);
+	double[] cx = new double[(int) (end - begin)];
+	double[] cy = new double[cx.length];
+	for (long n = begin; n < end; n++) {
+	    int slot = (int) (n % xs.length);
+	    cx[(int) (n - begin)] = xs[slot];
+	    cy[(int) (n - begin)] = ys[slot];
+	}
+	// Only the points whose slots were written during copying are dropped,
+	// including the point that is being appended now
+	VarHandle.loadLoadFence();
+	long overwritten = writing.get() - xs.length;
+	int drop = (int) Math.max(0, Math.min(cx.length, overwritten - begin));
+	if (drop > 0) {
+	    cx = Arrays.copyOfRange(cx, drop, cx.length);
+	    cy = Arrays.copyOfRange(cy, drop, cy.length);
+	}
+	return new DoubleSeries(cx, cy);
+    }
+
+    @Override
+    public int size() {
+	return (int) Math.min(head.get(), xs.length);
+    }
+
+    @Override
+    public double getX(int i) {
+	return xs[slot(i)];
+    }
+
+    @Override
+    public double getY(int i) {
+	return ys[slot(i)];
+    }
+
+    @Override
+    public boolean isValid(int i) {
+	return !Double.isNaN(getY(i));
+    }
+
+    @Override
+    public long version() {
+	return head.get();
+    }
+
+    // The slot of the i-th point that the series currently keeps
+    private int slot(int i) {
+	long h = head.get();
+	long begin = Math.max(0, h - xs.length);
+	return (int) ((begin + i) % xs.length);
+    }
+}
@@ -126,4 +126,19 @@ public class Config extends BaseConfig {
     /** Decimal Format of numbers on bar **/
     public DecimalFormat barnumber_decimal = new DecimalFormat("#0.00");
 
+    @Override
+    public Config snapshot() {
+	return (Config) super.snapshot();
+    }
+
+    @Override
+    protected int group(String name) {
+	switch (name) {
+	case "xunit":
+	case "yunit":
+	    return VIEWPORT;
+	default:
+	    return super.group(name);
+	}
+    }
 }
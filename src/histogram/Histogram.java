@@ -1,12 +1,13 @@
 package histogram;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
-import javax.swing.JPanel;
+import java.util.concurrent.Flow;
 
 import common.AbstractGraphTool;
+import common.BatchSubscriber;
 import common.RenderPanel;
+import common.SnapshotList;
 import histogram.ui.HistogramPanel;
 
 /**
@@ -18,10 +19,11 @@ import histogram.ui.HistogramPanel;
  */
 public class Histogram extends AbstractGraphTool {
 
-    private List<Section> sections;
+    /** Sections, producers may add them while rendering **/
+    private SnapshotList<Section> sections;
 
     /** The JPanel that contains all rendering stuff **/
-    private RenderPanel panel;
+    private volatile RenderPanel panel;
 
     /** Configuration **/
     private Config config;
@@ -40,7 +42,7 @@ public class Histogram extends AbstractGraphTool {
      */
     public Histogram(Config config) {
 	super(config);
-	sections = new ArrayList<Section>();
+	sections = new SnapshotList<Section>();
 	this.config = config;
     }
 
@@ -51,13 +53,34 @@ public class Histogram extends AbstractGraphTool {
      * @param sections Array of section {@link histogram.Section}
      */
     public void addSection(Section... sections) {
-	for (Section s : sections) {
-	    this.sections.add(s);
-	}
+	this.sections.addAll(Arrays.asList(sections));
+    }
+
+    /**
+     * Subscribe to a publisher of sections, the sections will be added to the
+     * histogram. Sections that arrive between two frames are added at once, and
+     * the publisher is slowed down if the graph cannot keep up, see
+     * {@link common.BatchSubscriber}.
+     * 
+     * @param publisher The publisher of sections
+     * @return The subscriber, which can be used to cancel the subscription
+     */
+    public BatchSubscriber<Section> subscribe(Flow.Publisher<Section> publisher) {
+	BatchSubscriber<Section> subscriber = new BatchSubscriber<Section>() {
+	    @Override
+	    protected void publish(List<Section> items) {
+		sections.addAll(items);
+		if (panel != null) {
+		    panel.repaint();
+		}
+	    }
+	};
+	publisher.subscribe(subscriber);
+	return subscriber;
     }
 
     @Override
-    protected JPanel getGraphPanel() {
+    protected synchronized RenderPanel getGraphPanel() {
 	if (panel == null) {
 	    panel = new HistogramPanel(config, sections);
 	}
@@ -1,8 +1,10 @@
 package histogram;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import common.SnapshotList;
+
 /**
  * Section represent one unit of x axis in histogram. One unit can contain
  * multiple bars.
@@ -18,7 +20,7 @@ public class Section {
      * Construct section with no bar by default
      */
     public Section() {
-	bars = new ArrayList<Bar>();
+	bars = new SnapshotList<Bar>();
     }
 
     /**
@@ -36,9 +38,7 @@ public class Section {
      * @param b Array of bar {@link histogram.Bar}
      */
     public void addBar(Bar... bars) {
-	for (Bar b : bars) {
-	    this.bars.add(b);
-	}
+	this.bars.addAll(Arrays.asList(bars));
     }
 
     /**
@@ -4,10 +4,12 @@ import java.awt.Graphics;
 import java.util.ArrayList;
 import java.util.List;
 
+import common.SnapshotList;
 import histogram.Bar;
 import histogram.Category;
 import histogram.Config;
 import histogram.Section;
+import trend.Trend;
 
 /**
  * Render categories at top right corner
@@ -18,7 +20,10 @@ import histogram.Section;
 public class CategoryComponent extends HistogramComponent {
 
     private List<Section> section;
+    private List<Trend> trend;
     private List<Category> category;
+    /** Version of the sections or trends that the categories were collected from **/
+    private long category_version = -1;
 
     public CategoryComponent(Config config) {
 	super(config);
@@ -30,28 +35,72 @@ public class CategoryComponent extends HistogramComponent {
 	return this;
     }
 
+    @Override
+    public HistogramComponent addTrend(List<Trend> trend) {
+	this.trend = trend;
+	return this;
+    }
+
     public HistogramComponent receiveCategory(List<Category> category) {
 	this.category = category;
 	return this;
     }
 
+    @Override
+    public long version() {
+	if (trend != null) {
+	    // Trends keep their categories, only new trends add categories
+	    return SnapshotList.version(trend);
+	}
+	if (section == null) {
+	    // Categories are given directly
+	    return 0;
+	}
+	long version = SnapshotList.version(section);
+	for (Section s : SnapshotList.snapshot(section)) {
+	    if (s != null) {
+		version += SnapshotList.version(s.getBars());
+	    }
+	}
+	return version;
+    }
+
     @Override
     public void render(Graphics g) {
-	if (category == null) {
-	    category = new ArrayList<Category>();
-	    for (int i = 0; i < section.size(); i++) {
-		Section s = section.get(i);
-		List<Bar> bars = s.getBars();
-		for (int j = 0; j < bars.size(); j++) {
-		    Bar b = bars.get(j);
-		    Category c = b.getCategory();
-		    if (!category.contains(c)) {
-			category.add(c);
+	long version = version();
+	List<Category> cs;
+	// Tiles may be rendered in parallel, categories are collected only once
+	synchronized (this) {
+	    if ((section != null || trend != null) && (category == null || category_version != version)) {
+		List<Category> collected = new ArrayList<Category>();
+		if (trend != null) {
+		    List<Trend> trends = SnapshotList.snapshot(trend);
+		    for (int i = 0; i < trends.size(); i++) {
+			Category c = trends.get(i).getCategory();
+			if (!collected.contains(c)) {
+			    collected.add(c);
+			}
+		    }
+		} else {
+		    List<Section> sections = SnapshotList.snapshot(section);
+		    for (int i = 0; i < sections.size(); i++) {
+			Section s = sections.get(i);
+			List<Bar> bars = SnapshotList.snapshot(s.getBars());
+			for (int j = 0; j < bars.size(); j++) {
+			    Bar b = bars.get(j);
+			    Category c = b.getCategory();
+			    if (!collected.contains(c)) {
+				collected.add(c);
+			    }
+			}
 		    }
 		}
+		category = collected;
+		category_version = version;
 	    }
+	    cs = category;
 	}
-	render_category(g, category);
+	render_category(g, cs);
     }
 
     private void render_category(Graphics g, List<Category> cs) {
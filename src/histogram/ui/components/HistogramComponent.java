@@ -5,8 +5,10 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Rectangle;
+import java.text.DecimalFormat;
 import java.util.List;
 
+import common.BaseConfig;
 import common.Renderable;
 import histogram.Config;
 import histogram.Section;
@@ -21,7 +23,7 @@ import trend.Trend;
  * @author Daniel Xu
  *
  */
-public abstract class HistogramComponent implements Renderable {
+public abstract class HistogramComponent implements Renderable, Cloneable {
 
     /** Configuration **/
     protected Config config;
@@ -41,6 +43,11 @@ public abstract class HistogramComponent implements Renderable {
     public HistogramComponent(Config config) {
 	this.config = config;
 	init();
+	config.addListener((c, group) -> {
+	    if (group == Config.VIEWPORT) {
+		init();
+	    }
+	});
     }
 
     // Initialize some important variables
@@ -62,6 +69,22 @@ public abstract class HistogramComponent implements Renderable {
 	end_y = new int[] { 100, 100 };
     }
 
+    /**
+     * The snapshot is a copy of the component with its own units and scales,
+     * which are calculated from the snapshot of the configuration
+     */
+    @Override
+    public Renderable snapshot(BaseConfig config) {
+	try {
+	    HistogramComponent c = (HistogramComponent) clone();
+	    c.config = (Config) config;
+	    c.init();
+	    return c;
+	} catch (CloneNotSupportedException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
     /**
      * Add sections to the component
      * 
@@ -82,6 +105,21 @@ public abstract class HistogramComponent implements Renderable {
 	return this;
     }
 
+    /**
+     * Format the number on bars by <code>config.barnumber_decimal</code>.
+     * DecimalFormat is not thread-safe, so the format is locked while it is used
+     * since components may be rendered in parallel.
+     * 
+     * @param value The number
+     * @return The formatted number
+     */
+    protected String format_number(double value) {
+	DecimalFormat f = config.barnumber_decimal;
+	synchronized (f) {
+	    return f.format(value);
+	}
+    }
+
     /**
      * Render text at the center of rectangle
      * 
@@ -111,4 +149,13 @@ public abstract class HistogramComponent implements Renderable {
      * @param g Graphics g
      */
     public abstract void render(Graphics g);
+
+    /**
+     * Components are static unless they are changed without changing the
+     * version, see {@link common.Renderable#isStatic()}.
+     */
+    @Override
+    public boolean isStatic() {
+	return true;
+    }
 }
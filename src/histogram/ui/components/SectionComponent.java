@@ -7,6 +7,7 @@ import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
 import java.util.List;
 
+import common.SnapshotList;
 import histogram.Bar;
 import histogram.Category;
 import histogram.Config;
@@ -27,18 +28,30 @@ public class SectionComponent extends HistogramComponent {
 	return this;
     }
 
+    @Override
+    public long version() {
+	long version = SnapshotList.version(section);
+	for (Section s : SnapshotList.snapshot(section)) {
+	    if (s != null) {
+		version += SnapshotList.version(s.getBars());
+	    }
+	}
+	return version;
+    }
+
     @Override
     public void render(Graphics g) {
-	for (int i = 0; i < section.size(); i++) {
-	    if (section.get(i) != null) {
-		renderSection(g, section.get(i), starting[0] + i * xscale);
+	List<Section> sections = SnapshotList.snapshot(section);
+	for (int i = 0; i < sections.size(); i++) {
+	    if (sections.get(i) != null) {
+		renderSection(g, sections.get(i), starting[0] + i * xscale);
 	    }
 	}
     }
 
     private void renderSection(Graphics g, Section s, double startx) {
 	Graphics2D g2d = (Graphics2D) g;
-	List<Bar> bars = s.getBars();
+	List<Bar> bars = SnapshotList.snapshot(s.getBars());
 	double ratio = xscale / bars.size();
 	for (int i = 0; i < bars.size(); i++) {
 	    Bar b = bars.get(i);
@@ -55,7 +68,7 @@ public class SectionComponent extends HistogramComponent {
 	    if (config.show_bar_number) {
 		Rectangle r = new Rectangle((int) (startx + i * ratio), (int) (starting[1] - value * yscale) - 30,
 			(int) ratio, 30);
-		String text = config.barnumber_decimal.format(value * (config.yunit[1] - config.yunit[0]));
+		String text = super.format_number(value * (config.yunit[1] - config.yunit[0]));
 		super.renderlabel(g2d, r, config.barnumber_font, text, config.barnumber_color);
 	    }
 	}
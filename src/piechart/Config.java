@@ -36,4 +36,9 @@ public class Config extends BaseConfig {
 
     /** The font of the sector label, cannot be modified for now **/
     public final Font sectorlabel_font = new Font("Helvetica", Font.BOLD, 12);
+
+    @Override
+    public Config snapshot() {
+	return (Config) super.snapshot();
+    }
 }
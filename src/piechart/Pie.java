@@ -1,12 +1,10 @@
 package piechart;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-
-import javax.swing.JPanel;
 
 import common.AbstractGraphTool;
+import common.RenderPanel;
+import common.SnapshotList;
 import piechart.ui.PiePanel;
 
 /**
@@ -17,11 +15,12 @@ import piechart.ui.PiePanel;
  */
 public class Pie extends AbstractGraphTool {
 
-    private List<Sector> sectors;
+    /** Sectors, producers may add them while rendering **/
+    private SnapshotList<Sector> sectors;
 
     private Config config;
 
-    private JPanel panel;
+    private volatile RenderPanel panel;
 
     /**
      * Construct a PieChart with the default configuration
@@ -38,7 +37,7 @@ public class Pie extends AbstractGraphTool {
     public Pie(Config config) {
 	super(config);
 	this.config = config;
-	sectors = new ArrayList<Sector>();
+	sectors = new SnapshotList<Sector>();
     }
 
     /**
@@ -51,7 +50,7 @@ public class Pie extends AbstractGraphTool {
     }
 
     @Override
-    protected JPanel getGraphPanel() {
+    protected synchronized RenderPanel getGraphPanel() {
 	if (panel == null) {
 	    panel = new PiePanel(config, sectors);
 	}
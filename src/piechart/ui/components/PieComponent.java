@@ -7,6 +7,7 @@ import java.awt.Graphics;
 import java.awt.Rectangle;
 import java.util.List;
 
+import common.BaseConfig;
 import common.Renderable;
 import piechart.Config;
 import piechart.Sector;
@@ -20,7 +21,7 @@ import piechart.Sector;
  * @author Daniel Xu
  *
  */
-public abstract class PieComponent implements Renderable {
+public abstract class PieComponent implements Renderable, Cloneable {
 
     /** Configuration **/
     protected Config config;
@@ -48,6 +49,11 @@ public abstract class PieComponent implements Renderable {
     public PieComponent(Config config) {
 	this.config = config;
 	init();
+	config.addListener((c, group) -> {
+	    if (group == Config.VIEWPORT) {
+		init();
+	    }
+	});
     }
 
     private void init() {
@@ -60,6 +66,22 @@ public abstract class PieComponent implements Renderable {
 	origin_y = chart_y + chart_size / 2;
     }
 
+    /**
+     * The snapshot is a copy of the component with its own locations, which are
+     * calculated from the snapshot of the configuration
+     */
+    @Override
+    public Renderable snapshot(BaseConfig config) {
+	try {
+	    PieComponent c = (PieComponent) clone();
+	    c.config = (Config) config;
+	    c.init();
+	    return c;
+	} catch (CloneNotSupportedException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
     /**
      * Render text at the center of rectangle
      * 
@@ -100,4 +122,13 @@ public abstract class PieComponent implements Renderable {
      */
     public abstract void render(Graphics g);
 
+    /**
+     * Components are static unless they are changed without changing the
+     * version, see {@link common.Renderable#isStatic()}.
+     */
+    @Override
+    public boolean isStatic() {
+	return true;
+    }
+
 }
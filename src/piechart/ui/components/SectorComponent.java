@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.geom.Arc2D;
 import java.util.List;
 
+import common.SnapshotList;
 import piechart.Config;
 import piechart.Sector;
 
@@ -29,6 +30,11 @@ public class SectorComponent extends PieComponent {
 	return this;
     }
 
+    @Override
+    public long version() {
+	return SnapshotList.version(sectors);
+    }
+
     @Override
     public void render(Graphics g) {
 	renderSector(g);
@@ -38,7 +44,7 @@ public class SectorComponent extends PieComponent {
     private void renderSector(Graphics g) {
 	Graphics2D g2d = (Graphics2D) g;
 	double last = 0;
-	for (Sector s : sectors) {
+	for (Sector s : SnapshotList.snapshot(sectors)) {
 	    double ratio = s.getPercent() * 360;
 	    g2d.setColor(s.getColor());
 	    Arc2D arc = new Arc2D.Double((double) super.chart_x, (double) super.chart_y, (double) super.chart_size,
@@ -54,8 +60,9 @@ public class SectorComponent extends PieComponent {
 	    int starty = super.chart_x + super.chart_size;
 	    int offset = 35;
 	    g.setFont(config.sectorlabel_font);
-	    for (int i = 0; i < sectors.size(); i++) {
-		Sector s = sectors.get(i);
+	    List<Sector> ss = SnapshotList.snapshot(sectors);
+	    for (int i = 0; i < ss.size(); i++) {
+		Sector s = ss.get(i);
 		String name = s.getName() + " (%" + (s.getPercent() * 100) + ")";
 		int name_width = g.getFontMetrics().stringWidth(name);
 		if (startx + name_width >= config.width) {
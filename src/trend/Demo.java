@@ -2,6 +2,7 @@ package trend;
 
 import java.awt.Color;
 
+import grapher.util.RingSeries;
 import histogram.Category;
 import util.Randomizer;
 
@@ -17,6 +18,11 @@ public class Demo {
 	 * An example of showing custom trend graph
 	 */
 	// customtrend().show();
+
+	/*
+	 * An example of showing a trend graph of live values
+	 */
+	// streamtrend().show();
     }
 
     /**
@@ -75,4 +81,29 @@ public class Demo {
 	return g;
     }
 
+    /**
+     * This is an example of setting up a trend graph that shows live values. The
+     * values are produced by another thread, and only the latest values are
+     * shown. {@link util.Randomizer} is used here to generate random values
+     */
+    public static TrendGraph streamtrend() {
+	Category c1 = new Category("APPLE", Color.RED);
+	TrendGraph g = new TrendGraph();
+	RingSeries stream = g.add_stream(c1); // Keeps as many values as x units
+	Thread producer = new Thread(() -> {
+	    double[] values = Randomizer.relative_rand(2.5, 0.5, 1000);
+	    for (int i = 0; i < values.length; i++) {
+		stream.append(Math.max(0, Math.min(5, values[i]))); // New values replace the oldest
+		try {
+		    Thread.sleep(500);
+		} catch (InterruptedException e) {
+		    return;
+		}
+	    }
+	});
+	producer.setDaemon(true);
+	producer.start();
+	return g;
+    }
+
 }
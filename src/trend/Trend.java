@@ -1,5 +1,7 @@
 package trend;
 
+import grapher.util.PointSeries;
+import grapher.util.RingSeries;
 import histogram.Category;
 
 /**
@@ -30,15 +32,49 @@ public class Trend {
 	this.val = val;
     }
 
+    /** Stream of values, null if the values are fixed **/
+    private RingSeries stream;
+
+    /**
+     * Construct the Trend that shows the latest values of a stream. Values are
+     * appended by calling {@link grapher.util.RingSeries#append(double)}, and the
+     * trend line scrolls as new values come in. The capacity of the stream should
+     * be equal to the length of <code>Config.xunit</code>
+     * 
+     * @param c      The category that this trend belongs to
+     * @param stream Stream of values
+     */
+    public Trend(Category c, RingSeries stream) {
+	this.category = c;
+	this.stream = stream;
+    }
+
     /**
      * Get the values of the trend line
      * 
      * @return Values of the trend line
      */
     public double[] getVal() {
+	if (stream != null) {
+	    PointSeries s = stream.snapshot();
+	    double[] v = new double[s.size()];
+	    for (int i = 0; i < v.length; i++) {
+		v[i] = s.getY(i);
+	    }
+	    return v;
+	}
 	return val;
     }
 
+    /**
+     * Get the stream of values
+     * 
+     * @return The stream, null if the values are fixed
+     */
+    public RingSeries getStream() {
+	return stream;
+    }
+
     /**
      * Get the category of this trend
      * 
@@ -1,13 +1,15 @@
 package trend;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
-import javax.swing.JPanel;
+import java.util.concurrent.Flow;
 
 import common.AbstractGraphTool;
+import common.BatchSubscriber;
 import common.RenderPanel;
+import common.SnapshotList;
+import grapher.util.RingSeries;
+import histogram.Category;
 import trend.ui.TrendPanel;
 
 /**
@@ -19,9 +21,10 @@ import trend.ui.TrendPanel;
  */
 public class TrendGraph extends AbstractGraphTool {
 
-    private RenderPanel panel;
+    private volatile RenderPanel panel;
 
-    private List<Trend> trends;
+    /** Trends, producers may add them while rendering **/
+    private SnapshotList<Trend> trends;
 
     private Config config;
 
@@ -42,7 +45,7 @@ public class TrendGraph extends AbstractGraphTool {
     public TrendGraph(Config config) {
 	super(config);
 	this.config = config;
-	trends = new ArrayList<Trend>();
+	trends = new SnapshotList<Trend>();
     }
 
     /**
@@ -54,10 +57,60 @@ public class TrendGraph extends AbstractGraphTool {
 	this.trends.addAll(Arrays.asList(trends));
     }
 
+    /**
+     * Add a trend that shows the latest values of a stream. The stream keeps as
+     * many values as the length of <code>Config.xunit</code>, and the trend graph
+     * will be repainted about 60 times a second while values are coming.
+     * 
+     * @param c The category that the trend belongs to
+     * @return The stream that values should be appended to, by one producer thread
+     */
+    public RingSeries add_stream(Category c) {
+	RingSeries ring = new RingSeries(config.xunit.length);
+	// Streams that are added while the panel is created are watched once
+	synchronized (this) {
+	    add_trend(new Trend(c, ring));
+	    if (panel != null) {
+		panel.watch(ring::version);
+	    }
+	}
+	return ring;
+    }
+
+    /**
+     * Subscribe to a publisher of values, and show the latest values as a trend.
+     * Values that arrive between two frames are appended at once, and the
+     * publisher is slowed down if the graph cannot keep up, see
+     * {@link common.BatchSubscriber}.
+     * 
+     * @param c         The category that the trend belongs to
+     * @param publisher The publisher of values
+     * @return The subscriber, which can be used to cancel the subscription
+     */
+    public BatchSubscriber<Double> subscribe(Category c, Flow.Publisher<Double> publisher) {
+	RingSeries stream = add_stream(c);
+	BatchSubscriber<Double> subscriber = new BatchSubscriber<Double>() {
+	    @Override
+	    protected void publish(List<Double> items) {
+		for (int i = 0; i < items.size(); i++) {
+		    stream.append(items.get(i));
+		}
+	    }
+	};
+	publisher.subscribe(subscriber);
+	return subscriber;
+    }
+
     @Override
-    protected JPanel getGraphPanel() {
+    protected synchronized RenderPanel getGraphPanel() {
 	if (panel == null) {
 	    panel = new TrendPanel(config, trends);
+	    for (Trend t : trends) {
+		RingSeries s = t.getStream();
+		if (s != null) {
+		    panel.watch(s::version);
+		}
+	    }
 	}
 	return panel;
     }
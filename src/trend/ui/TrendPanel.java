@@ -1,10 +1,8 @@
 package trend.ui;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import common.RenderPanel;
-import histogram.Category;
 import histogram.ui.components.CategoryComponent;
 import histogram.ui.components.LayoutComponent;
 import trend.Config;
@@ -23,15 +21,9 @@ public class TrendPanel extends RenderPanel {
 	super(config);
 	super.addRenderable(new LayoutComponent(config));
 	super.addRenderable(new TrendComponent(config).addTrend(trends));
-	// Add all categories to a list and reuse the CategoryComponent from Histogram
-	List<Category> category = new ArrayList<Category>();
-	for (int i = 0; i < trends.size(); i++) {
-	    Category c = trends.get(i).getCategory();
-	    if (!category.contains(c)) {
-		category.add(c);
-	    }
-	}
-	super.addRenderable(new CategoryComponent(config).receiveCategory(category));
+	// Reuse the CategoryComponent from Histogram, it collects the categories of
+	// the trends again when trends are added
+	super.addRenderable(new CategoryComponent(config).addTrend(trends));
     }
 
 }
@@ -8,6 +8,8 @@ import java.awt.Stroke;
 import java.awt.geom.Path2D;
 import java.util.List;
 
+import common.Rasterizer;
+import common.SnapshotList;
 import histogram.Category;
 import histogram.Config;
 import histogram.ui.components.HistogramComponent;
@@ -33,16 +35,32 @@ public class TrendComponent extends HistogramComponent {
 	return this;
     }
 
+    @Override
+    public long version() {
+	long version = SnapshotList.version(trends);
+	for (Trend t : SnapshotList.snapshot(trends)) {
+	    if (t.getStream() != null) {
+		version += t.getStream().version();
+	    }
+	}
+	return version;
+    }
+
     @Override
     public void render(Graphics g) {
-	for (int i = 0; i < trends.size(); i++) {
-	    renderTrend(g, trends.get(i));
+	List<Trend> ts = SnapshotList.snapshot(trends);
+	for (int i = 0; i < ts.size(); i++) {
+	    renderTrend(g, ts.get(i));
 	}
     }
 
     private void renderTrend(Graphics g, Trend t) {
 	Category c = t.getCategory();
 	double[] vals = t.getVal();
+	Graphics2D g2d = (Graphics2D) g;
+	g2d.setColor(c.getColor());
+	// Only thin trends are drawn on the image directly
+	Rasterizer raster = config.trend_thickness <= 1 ? Rasterizer.of(g2d, config, vals.length) : null;
 	Path2D path = new Path2D.Double();
 	for (int i = 0; i < vals.length; i++) {
 	    double val = vals[i];
@@ -50,26 +68,30 @@ public class TrendComponent extends HistogramComponent {
 	    double y = starting[1] - val * yscale;
 	    int tness = config.trend_thickness;
 	    if (config.show_trenddot) {
-		g.setColor(c.getColor());
-		g.fillOval((int) x - tness, (int) y - tness, tness * 2, tness * 2);
+		if (raster != null)
+		    raster.fill_circle((int) x, (int) y, tness);
+		else
+		    g.fillOval((int) x - tness, (int) y - tness, tness * 2, tness * 2);
 	    }
-	    if (i == 0)
+	    if (i > 0 && raster != null)
+		raster.line(x - xscale, starting[1] - vals[i - 1] * yscale, x, y);
+	    else if (i == 0)
 		path.moveTo(x, y);
 	    else
 		path.lineTo(x, y);
 	}
-	Graphics2D g2d = (Graphics2D) g;
-	g2d.setColor(c.getColor());
-	Stroke origin = g2d.getStroke();
-	g2d.setStroke(new BasicStroke(config.trend_thickness));
-	g2d.draw(path);
-	g2d.setStroke(origin);
+	if (raster == null) {
+	    Stroke origin = g2d.getStroke();
+	    g2d.setStroke(new BasicStroke(config.trend_thickness));
+	    g2d.draw(path);
+	    g2d.setStroke(origin);
+	}
 	if (config.show_trendnumber) {
 	    for (int i = 0; i < vals.length; i++) {
 		double val = vals[i];
 		double y = starting[1] - val * yscale;
 		Rectangle r = new Rectangle((int) (starting[0] + i * xscale), (int) (y) - 35, (int) xscale, 30);
-		String text = config.barnumber_decimal.format(val * (config.yunit[1] - config.yunit[0]));
+		String text = super.format_number(val * (config.yunit[1] - config.yunit[0]));
 		super.renderlabel(g, r, config.barnumber_font, text, config.barnumber_color);
 	    }
 	}